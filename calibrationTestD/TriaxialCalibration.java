@@ -21,11 +21,22 @@ import java.io.*;
 
 class TriaxialCalibration {
   
+  // PRIVATE CONSTANTS
+  
+  // basis of the polynomials in temperature
+  private static final int BASIS_RAW = 0;  // powers of the temperature T
+  private static final int BASIS_NORMALIZED = 1;  // powers of the normalized temperature t = ( 2*T - (Tmax+Tmin) )/( Tmax - Tmin )
+  private static final int BASIS_CHEBYSHEV = 2;  // Chebyshev polynomials of the normalized temperature t
+  
+  
   // PRIVATE VARIABLES
   
   private int N;  // order of the polynomial
   private int N9;  // 9*N (for efficiency purposes)
   private double[] z;  // array that will contain the calibration coefficients
+  private int basis;  // basis of the polynomials (BASIS_RAW, BASIS_NORMALIZED or BASIS_CHEBYSHEV)
+  private double Tc;  // center of the temperature range ( t = ( T - Tc )*scaleT )
+  private double scaleT;  // inverse of the half width of the temperature range
   
   
   // PUBLIC CONSTRUCTORS
@@ -73,6 +84,20 @@ class TriaxialCalibration {
       String[] strValues = strLine.split(" ");
       int theN = Integer.parseInt( strValues[0] );
       this.reset( theN );
+      // and the basis of the polynomials (old files, without basis, use the raw temperature)
+      if( strValues.length > 3 ){
+        double Tmin = Double.parseDouble( strValues[1] );
+        double Tmax = Double.parseDouble( strValues[2] );
+        this.Tc = 0.5*( Tmax + Tmin );
+        this.scaleT = ( Tmax > Tmin )? 2.0/( Tmax - Tmin ) : 1.0;
+        if( strValues[3].equals( "normalized" ) ){
+          this.basis = BASIS_NORMALIZED;
+        }else if( strValues[3].equals( "chebyshev" ) ){
+          this.basis = BASIS_CHEBYSHEV;
+        }else{
+          throw new Exception( "TriaxialCalibration: unknown basis." );
+        }
+      }
       // then, we obtain the matrix elements and the offset for each degree
       for(int n=0; n<=this.N; n++){
         strLine = br.readLine();
@@ -107,12 +132,28 @@ class TriaxialCalibration {
   
   public synchronized double[] get_calibratedMeasurements( double[] m , double T ) {
     double[] cm = new double[3];
-    double Tn = 1.0;
-    for(int n9=0; n9<=this.N9; n9+=9){
-      cm[0] += ( this.z[n9+0]*m[0]                                          +  this.z[n9+6] )*Tn;
-      cm[1] += ( this.z[n9+1]*m[0] + this.z[n9+2]*m[1]                      +  this.z[n9+7] )*Tn;
-      cm[2] += ( this.z[n9+3]*m[0] + this.z[n9+4]*m[1] + this.z[n9+5]*m[2]  +  this.z[n9+8] )*Tn;
-      Tn *= T;
+    double t = ( this.basis == BASIS_RAW )? T : ( T - this.Tc )*this.scaleT;
+    if( this.basis == BASIS_CHEBYSHEV ){
+      // Clenshaw recurrence: b_n = v_n + 2*t*b_(n+1) - b_(n+2) , and the result is v_0 + t*b_1 - b_2
+      double b1x = 0.0, b1y = 0.0, b1z = 0.0;
+      double b2x = 0.0, b2y = 0.0, b2z = 0.0;
+      for(int n9=this.N9; n9>0; n9-=9){
+        double bx = ( this.z[n9+0]*m[0]                                          +  this.z[n9+6] ) + 2.0*t*b1x - b2x;
+        double by = ( this.z[n9+1]*m[0] + this.z[n9+2]*m[1]                      +  this.z[n9+7] ) + 2.0*t*b1y - b2y;
+        double bz = ( this.z[n9+3]*m[0] + this.z[n9+4]*m[1] + this.z[n9+5]*m[2]  +  this.z[n9+8] ) + 2.0*t*b1z - b2z;
+        b2x = b1x;   b2y = b1y;   b2z = b1z;
+        b1x = bx;    b1y = by;    b1z = bz;
+      }
+      cm[0] = ( this.z[0]*m[0]                                    +  this.z[6] ) + t*b1x - b2x;
+      cm[1] = ( this.z[1]*m[0] + this.z[2]*m[1]                   +  this.z[7] ) + t*b1y - b2y;
+      cm[2] = ( this.z[3]*m[0] + this.z[4]*m[1] + this.z[5]*m[2]  +  this.z[8] ) + t*b1z - b2z;
+    }else{
+      // Horner scheme
+      for(int n9=this.N9; n9>=0; n9-=9){
+        cm[0] = cm[0]*t + ( this.z[n9+0]*m[0]                                          +  this.z[n9+6] );
+        cm[1] = cm[1]*t + ( this.z[n9+1]*m[0] + this.z[n9+2]*m[1]                      +  this.z[n9+7] );
+        cm[2] = cm[2]*t + ( this.z[n9+3]*m[0] + this.z[n9+4]*m[1] + this.z[n9+5]*m[2]  +  this.z[n9+8] );
+      }
     }
     return cm;
   }
@@ -124,6 +165,9 @@ class TriaxialCalibration {
     this.N = theN;
     this.N9 = 9*this.N;
     this.z = new double[9*(this.N+1)];
+    this.basis = BASIS_RAW;
+    this.Tc = 0.0;
+    this.scaleT = 1.0;
   }
   
-}
+}
\ No newline at end of file
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+
+// class that keeps the results of previous calibrations in a folder, so a calibration with the same data and the same configuration is not computed again.
+// The results are stored by key (the path, size and modification time of the data file, and the configuration of the calibrator), each entry in its own folder
+// with the SHA-256 hash of the data file, that is checked before the results are restored.
+// The modification time of each entry is updated when it is used, and the least recently used entries are removed when the size of the cache exceeds its maximum
+class CalibrationCache {
+  
+  // PARAMETERS
+  // version of the stored results: it has to be increased when the calibration algorithm changes in a way that is not reflected in the configuration of the calibrators
+  static final int VERSION = 3;
+  private static final String ENTRY_NAME = "entry";  // the files of each entry are named ENTRY_NAME + the suffix of the result (".cal", ".err", ...)
+  private static final String HASH_NAME = "data.sha256";  // file of each entry with the hash of the data file
+  private static final int BUFFER_SIZE = 1 << 16;
+  // the hashes of the data files are kept while the files do not change (the same file is usually calibrated for several sensors)
+  private static final HashMap<String,String> fileHashes = new HashMap<String,String>();
+  // the caches of the same process that use the same folder do not modify it at the same time
+  private static final Object lock = new Object();
+  
+  // VARIABLES
+  private File folder;
+  private long maxSize;  // (bytes)
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  // creates a cache stored in thePath, with a maximum size of theMaxSize bytes
+  public CalibrationCache( String thePath , long theMaxSize ) {
+    this.folder = new File( thePath );
+    this.maxSize = theMaxSize;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // returns the key of the results of calibrating the data file located in dataPath with theConfiguration (a description of every parameter that changes the results).
+  // The data file is not read: its contents are only checked when there are results with the key (see restore)
+  public static String get_key( String dataPath , String theConfiguration ) throws IOException {
+    return to_hex( sha256( ( VERSION + "\n" + get_fileID( new File( dataPath ).getCanonicalFile() ) + "\n" + theConfiguration ).getBytes( "UTF-8" ) ) );
+  }
+  
+  // returns the SHA-256 hash of the file located in path (in hexadecimal)
+  public static String hash_file( String path ) throws IOException {
+    File theFile = new File( path ).getCanonicalFile();
+    String id = get_fileID( theFile );
+    synchronized( fileHashes ){
+      String hash = fileHashes.get( id );
+      if( hash != null ) return hash;
+    }
+    MessageDigest digest = get_digest();
+    InputStream in = new FileInputStream( theFile );
+    try{
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+      while( ( n = in.read( buffer ) ) >= 0 ) digest.update( buffer , 0 , n );
+    }finally{
+      in.close();
+    }
+    String hash = to_hex( digest.digest() );
+    synchronized( fileHashes ){
+      fileHashes.put( id , hash );
+    }
+    return hash;
+  }
+  
+  // copies the results stored with theKey to fPath + the suffix of each one. Returns false if there are no results with theKey, or if they were computed
+  // with other contents of the data file located in dataPath (it is only read in that case)
+  public boolean restore( String theKey , String dataPath , String fPath ) {
+    File entry = new File( this.folder , theKey );
+    try{
+      String hash;
+      synchronized( lock ){
+        if( !entry.isDirectory() ) return false;
+        hash = read_text( new File( entry , HASH_NAME ) );
+      }
+      // the data file is hashed out of the lock, because it can take long
+      if( !hash.equals( hash_file( dataPath ) ) ) return false;
+    }catch( IOException e ){
+      System.out.println( "Error: " + e.getMessage() );
+      return false;
+    }
+    synchronized( lock ){
+      File[] files = entry.listFiles();
+      if( files == null ) return false;
+      try{
+        for(int i=0; i<files.length; i++){
+          String name = files[i].getName();
+          if( name.startsWith( ENTRY_NAME ) ) copy( files[i] , new File( fPath + name.substring( ENTRY_NAME.length() ) ) );
+        }
+      }catch( IOException e ){
+        System.out.println( "Error: " + e.getMessage() );
+        return false;
+      }
+      // the entry has just been used
+      entry.setLastModified( System.currentTimeMillis() );
+      return true;
+    }
+  }
+  
+  // stores with theKey the results fPath + theSuffixes (the files that do not exist are skipped), computed with the data file whose SHA-256 digest is
+  // theDataDigest, and removes the least recently used entries if the cache grows over its maximum size
+  public void store( String theKey , byte[] theDataDigest , String fPath , String[] theSuffixes ) {
+    synchronized( lock ){
+      File entry = new File( this.folder , theKey );
+      File temporary = new File( this.folder , theKey + ".tmp" );
+      try{
+        delete( temporary );
+        if( !temporary.mkdirs() ) throw new IOException( "The folder " + temporary + " can not be created." );
+        for(int i=0; i<theSuffixes.length; i++){
+          File theFile = new File( fPath + theSuffixes[i] );
+          if( theFile.exists() ) copy( theFile , new File( temporary , ENTRY_NAME + theSuffixes[i] ) );
+        }
+        write_text( new File( temporary , HASH_NAME ) , to_hex( theDataDigest ) );
+        // the entry appears complete, or does not appear
+        delete( entry );
+        if( !temporary.renameTo( entry ) ) throw new IOException( "The folder " + temporary + " can not be renamed." );
+      }catch( IOException e ){
+        System.out.println( "Error: " + e.getMessage() );
+        delete( temporary );
+        return;
+      }
+      this.evict();
+    }
+  }
+  
+  // returns the total size of the entries of the cache (bytes)
+  public long get_size() {
+    synchronized( lock ){
+      File[] entries = this.folder.listFiles();
+      if( entries == null ) return 0;
+      long size = 0;
+      for(int e=0; e<entries.length; e++) size += get_size( entries[e] );
+      return size;
+    }
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // removes the least recently used entries until the size of the cache is not greater than its maximum
+  private void evict() {
+    File[] entries = this.folder.listFiles();
+    if( entries == null ) return;
+    final long[] modified = new long[entries.length];
+    long size = 0;
+    for(int e=0; e<entries.length; e++) size += get_size( entries[e] );
+    if( size <= this.maxSize ) return;
+    // the last modification times are read once, so they do not change while the entries are sorted
+    Integer[] order = new Integer[entries.length];
+    for(int e=0; e<entries.length; e++){
+      modified[e] = entries[e].lastModified();
+      order[e] = e;
+    }
+    Arrays.sort( order , new Comparator<Integer>(){
+      public int compare( Integer a , Integer b ) {
+        return Long.compare( modified[a] , modified[b] );
+      }
+    });
+    for(int i=0; i<order.length  &&  size > this.maxSize; i++){
+      File oldest = entries[ order[i] ];
+      size -= get_size( oldest );
+      delete( oldest );
+    }
+  }
+  
+  // the path, size and modification time of theFile identify its contents while it is not modified
+  private static String get_fileID( File theFile ) {
+    return theFile.getPath() + "|" + theFile.length() + "|" + theFile.lastModified();
+  }
+  
+  private static long get_size( File theFile ) {
+    File[] files = theFile.listFiles();
+    if( files == null ) return theFile.length();
+    long size = 0;
+    for(int i=0; i<files.length; i++) size += get_size( files[i] );
+    return size;
+  }
+  
+  private static void delete( File theFile ) {
+    File[] files = theFile.listFiles();
+    if( files != null ){
+      for(int i=0; i<files.length; i++) delete( files[i] );
+    }
+    theFile.delete();
+  }
+  
+  private static void copy( File source , File destination ) throws IOException {
+    InputStream in = new FileInputStream( source );
+    try{
+      OutputStream out = new FileOutputStream( destination );
+      try{
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while( ( n = in.read( buffer ) ) >= 0 ) out.write( buffer , 0 , n );
+      }finally{
+        out.close();
+      }
+    }finally{
+      in.close();
+    }
+  }
+  
+  private static String read_text( File theFile ) throws IOException {
+    BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( theFile ) , "UTF-8" ) );
+    try{
+      String line = in.readLine();
+      return ( line == null )? "" : line;
+    }finally{
+      in.close();
+    }
+  }
+  
+  private static void write_text( File theFile , String theText ) throws IOException {
+    Writer out = new OutputStreamWriter( new FileOutputStream( theFile ) , "UTF-8" );
+    try{
+      out.write( theText );
+    }finally{
+      out.close();
+    }
+  }
+  
+  private static MessageDigest get_digest() throws IOException {
+    try{
+      return MessageDigest.getInstance( "SHA-256" );
+    }catch( Exception e ){
+      throw new IOException( "SHA-256 is not available." );
+    }
+  }
+  
+  private static byte[] sha256( byte[] theBytes ) throws IOException {
+    return get_digest().digest( theBytes );
+  }
+  
+  private static String to_hex( byte[] theBytes ) {
+    StringBuilder hex = new StringBuilder();
+    for(int i=0; i<theBytes.length; i++) hex.append( String.format( "%02x" , theBytes[i] & 0xff ) );
+    return hex.toString();
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+
+// class that calibrates several triaxial sensors (and several types of sensor) reading the data file only once.
+// Each line of the file is parsed once, and handed only to the calibrators whose sensor ID matches the one in the line
+public class CalibrationDriver {
+  
+  // VARIABLES
+  // calibrators registered, in the order they will be calibrated
+  private ArrayList<TriaxialCalibrator> calibrators;
+  // positions of the sensor ID used by the calibrators (usually only one)
+  private int[] indexesID;
+  // for each position of the sensor ID, the calibrators of each sensor ID
+  private ArrayList<HashMap<Integer,ArrayList<TriaxialCalibrator>>> calibratorsByID;
+  // reader of the data file, and values of the line being read (enough for every calibrator)
+  private DataFileReader reader;
+  private double[] values;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public CalibrationDriver() {
+    this.calibrators = new ArrayList<TriaxialCalibrator>();
+    this.indexesID = new int[0];
+    this.calibratorsByID = new ArrayList<HashMap<Integer,ArrayList<TriaxialCalibrator>>>();
+    this.reader = new DataFileReader();
+    this.values = new double[0];
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // registers a calibrator (its sensor ID and its indexes must be already set)
+  public void add_calibrator( TriaxialCalibrator theCalibrator ) {
+    this.calibrators.add( theCalibrator );
+    // we look for the position of its sensor ID
+    int k = 0;
+    while( k < this.indexesID.length  &&  this.indexesID[k] != theCalibrator.get_indexID() ) k++;
+    if( k == this.indexesID.length ){
+      this.indexesID = java.util.Arrays.copyOf( this.indexesID , k+1 );
+      this.indexesID[k] = theCalibrator.get_indexID();
+      this.calibratorsByID.add( new HashMap<Integer,ArrayList<TriaxialCalibrator>>() );
+    }
+    // and we add it to the calibrators of its sensor ID
+    HashMap<Integer,ArrayList<TriaxialCalibrator>> byID = this.calibratorsByID.get( k );
+    ArrayList<TriaxialCalibrator> theList = byID.get( theCalibrator.get_sensorID() );
+    if( theList == null ){
+      theList = new ArrayList<TriaxialCalibrator>();
+      byID.put( theCalibrator.get_sensorID() , theList );
+    }
+    theList.add( theCalibrator );
+    // the values of each line must fit the positions used by every calibrator
+    if( this.values.length < theCalibrator.get_numberOfValues() ) this.values = new double[theCalibrator.get_numberOfValues()];
+  }
+  
+  // calibrates all the registered calibrators using the data in fileName, reading the file only once
+  // (the calibrators whose results are in the cache are restored, and the file is only read for the rest)
+  public void calibrate_withFile( String dataPath , String fileName ) {
+    fileName = fileName.replace( ".dat" , "" );
+    CalibrationDriver pending = new CalibrationDriver();
+    for(int c=0; c<this.calibrators.size(); c++){
+      if( !this.calibrators.get( c ).restore_fromCache( dataPath , fileName ) ) pending.add_calibrator( this.calibrators.get( c ) );
+    }
+    if( pending.calibrators.size() == 0 ) return;
+    pending.scan_dataFile( dataPath + fileName );
+    for(int c=0; c<pending.calibrators.size(); c++){
+      pending.calibrators.get( c ).calibrate_withScannedData( dataPath , fileName );
+    }
+  }
+  
+  // reads the data file located in filePath (without extension), handing each line to the calibrators of its sensor ID
+  public void scan_dataFile( String filePath ) {
+    System.out.print( "Reading data for " + this.calibrators.size() + " calibrators..." );
+    // the data file is hashed while it is read if any calibrator keeps its results in the cache
+    boolean computeDigest = false;
+    for(int c=0; c<this.calibrators.size(); c++){
+      this.calibrators.get( c ).begin_scan();
+      if( this.calibrators.get( c ).caches_results() ) computeDigest = true;
+    }
+    if( this.reader.open( filePath + ".dat" , computeDigest ) ){
+      int count = this.reader.read_values( this.values );
+      while(  count >= 0  &&  !Thread.currentThread().isInterrupted()  ){
+        for(int k=0; k<this.indexesID.length; k++){
+          if( this.indexesID[k] < count ){
+            double theID = this.values[ this.indexesID[k] ];
+            ArrayList<TriaxialCalibrator> theList = this.calibratorsByID.get( k ).get( (int)theID );
+            if( theList != null  &&  (int)theID == theID ){
+              for(int c=0; c<theList.size(); c++) theList.get( c ).scan_values( this.values , count );
+            }
+          }
+        }
+        count = this.reader.read_values( this.values );
+      }
+      this.reader.close();
+    }
+    // the reading stops if the calibration is interrupted
+    if( Thread.interrupted() ) throw new CancellationException( "The reading of " + filePath + ".dat was interrupted." );
+    for(int c=0; c<this.calibrators.size(); c++) this.calibrators.get( c ).end_scan( this.reader.get_digest() , this.calibrators.size() );
+    System.out.println( " done." );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.*;
+import java.util.ArrayList;
+
+
+// class that records the time and the counters of each phase of a calibration (reading the data, building the tensors, solving each
+// polynomial order, ...), and writes them in a JSON file. The times are stored in seconds. The phases keep the order in which they are
+// first recorded, and recording a phase again accumulates its time and counters. It is used from one thread (the tasks that run
+// concurrently report their times when they are joined). The total time only counts the time while the calibration is active (see pause),
+// and the phases shared with other calibrations (like reading a data file for several sensors) only count their share (see share)
+class CalibrationProfile {
+  
+  // VARIABLES
+  // description of the calibration (pairs of names and values written at the beginning of the report)
+  private ArrayList<String> infoNames;
+  private ArrayList<Object> infoValues;
+  // phases, with their accumulated time (ns), the time at which they were last begun (ns), the number of calibrations that share them, and their counters
+  private ArrayList<String> names;
+  private ArrayList<long[]> times;
+  private ArrayList<ArrayList<String>> counterNames;
+  private ArrayList<ArrayList<Object>> counterValues;
+  // time while the calibration was active (ns), and the time at which it was last resumed (ns), or -1 if it is paused
+  private long activeTime;
+  private long t0;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public CalibrationProfile() {
+    this.infoNames = new ArrayList<String>();
+    this.infoValues = new ArrayList<Object>();
+    this.names = new ArrayList<String>();
+    this.times = new ArrayList<long[]>();
+    this.counterNames = new ArrayList<ArrayList<String>>();
+    this.counterValues = new ArrayList<ArrayList<Object>>();
+    this.reset();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // removes all the phases, and starts measuring the total time (the calibration is active)
+  public void reset() {
+    this.infoNames.clear();
+    this.infoValues.clear();
+    this.names.clear();
+    this.times.clear();
+    this.counterNames.clear();
+    this.counterValues.clear();
+    this.activeTime = 0;
+    this.t0 = System.nanoTime();
+  }
+  
+  // stops measuring the total time while the calibration is not active (for example, while other calibrations run between the reading of the data and this one)
+  public void pause() {
+    if( this.t0 < 0 ) return;
+    this.activeTime += System.nanoTime() - this.t0;
+    this.t0 = -1;
+  }
+  
+  // measures the total time again after pause
+  public void resume() {
+    if( this.t0 < 0 ) this.t0 = System.nanoTime();
+  }
+  
+  // sets a value that describes the calibration (the sensor, the data file, ...)
+  public void set_info( String name , Object value ) {
+    int i = this.infoNames.indexOf( name );
+    if( i < 0 ){
+      this.infoNames.add( name );
+      this.infoValues.add( value );
+    }else{
+      this.infoValues.set( i , value );
+    }
+  }
+  
+  // starts measuring the time of thePhase
+  public void begin( String thePhase ) {
+    this.get_times( thePhase )[1] = System.nanoTime();
+  }
+  
+  // stops measuring the time of thePhase, and adds the time elapsed since it was begun
+  public void end( String thePhase ) {
+    long[] t = this.get_times( thePhase );
+    t[0] += System.nanoTime() - t[1];
+  }
+  
+  // adds theTime (ns) to the time of thePhase (for the phases measured elsewhere, like the iterations of a solver)
+  public void add_time( String thePhase , long theTime ) {
+    this.get_times( thePhase )[0] += theTime;
+  }
+  
+  // marks thePhase as shared by theShares calibrations: its time is the one of the whole phase, but only its share is part of the total time
+  public void share( String thePhase , int theShares ) {
+    this.get_times( thePhase )[2] = Math.max( theShares , 1 );
+  }
+  
+  // adds theValue to a counter of thePhase
+  public void count( String thePhase , String theCounter , double theValue ) {
+    Object previous = this.get_counter( thePhase , theCounter );
+    this.set( thePhase , theCounter , ( previous instanceof Number )? ((Number)previous).doubleValue() + theValue : theValue );
+  }
+  
+  // sets a counter (a number, a boolean, or a string) of thePhase
+  public void set( String thePhase , String theCounter , Object theValue ) {
+    int p = this.get_phase( thePhase );
+    int c = this.counterNames.get( p ).indexOf( theCounter );
+    if( c < 0 ){
+      this.counterNames.get( p ).add( theCounter );
+      this.counterValues.get( p ).add( theValue );
+    }else{
+      this.counterValues.get( p ).set( c , theValue );
+    }
+  }
+  
+  // returns the value of a counter of thePhase (or null if it has not been set)
+  public Object get_counter( String thePhase , String theCounter ) {
+    int p = this.names.indexOf( thePhase );
+    if( p < 0 ) return null;
+    int c = this.counterNames.get( p ).indexOf( theCounter );
+    return ( c < 0 )? null : this.counterValues.get( p ).get( c );
+  }
+  
+  // returns the time (s) of thePhase
+  public double get_time( String thePhase ) {
+    int p = this.names.indexOf( thePhase );
+    return ( p < 0 )? 0.0 : 1.0e-9*this.times.get( p )[0];
+  }
+  
+  // returns the total time (s): the time while the calibration was active, counting only the share of the shared phases
+  public double get_totalTime() {
+    long total = this.activeTime;
+    if( this.t0 >= 0 ) total += System.nanoTime() - this.t0;
+    for(int p=0; p<this.times.size(); p++){
+      long[] t = this.times.get( p );
+      total -= t[0] - t[0]/t[2];
+    }
+    return 1.0e-9*total;
+  }
+  
+  // writes the report in path as a JSON object: { info..., "totalTime": s, "phases": [ { "name": ..., "time": s, counters... }, ... ] }.
+  // The shared phases also have the number of calibrations that share them ("shares"), and the time of this calibration ("timeShare")
+  public void write_json( String path ) {
+    try{
+      PrintWriter out = new PrintWriter( new BufferedWriter( new FileWriter( path ) ) );
+      out.println( "{" );
+      for(int i=0; i<this.infoNames.size(); i++) out.println( "  " + this.to_json( this.infoNames.get( i ) ) + ": " + this.to_json( this.infoValues.get( i ) ) + "," );
+      out.println( "  \"totalTime\": " + this.to_json( this.get_totalTime() ) + "," );
+      out.println( "  \"phases\": [" );
+      for(int p=0; p<this.names.size(); p++){
+        StringBuilder line = new StringBuilder();
+        line.append( "    { \"name\": " ).append( this.to_json( this.names.get( p ) ) );
+        long[] t = this.times.get( p );
+        line.append( ", \"time\": " ).append( this.to_json( 1.0e-9*t[0] ) );
+        if( t[2] > 1 ) line.append( ", \"shares\": " ).append( t[2] ).append( ", \"timeShare\": " ).append( this.to_json( 1.0e-9*t[0]/t[2] ) );
+        ArrayList<String> theNames = this.counterNames.get( p );
+        ArrayList<Object> theValues = this.counterValues.get( p );
+        for(int c=0; c<theNames.size(); c++) line.append( ", " ).append( this.to_json( theNames.get( c ) ) ).append( ": " ).append( this.to_json( theValues.get( c ) ) );
+        line.append( ( p < this.names.size()-1 )? " }," : " }" );
+        out.println( line );
+      }
+      out.println( "  ]" );
+      out.println( "}" );
+      out.flush();
+      out.close();
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+    }
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // returns the index of thePhase, adding it if it does not exist
+  private int get_phase( String thePhase ) {
+    int p = this.names.indexOf( thePhase );
+    if( p < 0 ){
+      p = this.names.size();
+      this.names.add( thePhase );
+      this.times.add( new long[]{ 0 , 0 , 1 } );
+      this.counterNames.add( new ArrayList<String>() );
+      this.counterValues.add( new ArrayList<Object>() );
+    }
+    return p;
+  }
+  
+  private long[] get_times( String thePhase ) {
+    return this.times.get( this.get_phase( thePhase ) );
+  }
+  
+  // writes a value in JSON (the numbers that are not finite are written as null, and the integer values without decimals)
+  private String to_json( Object theValue ) {
+    if( theValue == null ) return "null";
+    if( theValue instanceof Boolean ) return theValue.toString();
+    if( theValue instanceof Number ){
+      double v = ((Number)theValue).doubleValue();
+      if(  Double.isNaN( v )  ||  Double.isInfinite( v )  ) return "null";
+      if(  v == Math.rint( v )  &&  Math.abs( v ) < 1.0e15  ) return Long.toString( (long)v );
+      return Double.toString( v );
+    }
+    String s = theValue.toString();
+    StringBuilder json = new StringBuilder( "\"" );
+    for(int i=0; i<s.length(); i++){
+      char c = s.charAt( i );
+      if( c == '"'  ||  c == '\\' ){
+        json.append( '\\' ).append( c );
+      }else if( c < 0x20 ){
+        json.append( String.format( "\\u%04x" , (int)c ) );
+      }else{
+        json.append( c );
+      }
+    }
+    return json.append( '"' ).toString();
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,446 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.*;
+
+
+// command-line runner that calibrates the sensors listed in a job file without starting the sketch (so no display is needed).
+// Each line of the job file describes one sensor of a dataset with pairs key=value ('#' begins a comment):
+//
+//   data=storedData/data_20190530163305.dat  sensor=accelerometer  id=11  indexID=1  xyz=2,3,4  T=8  wm=12
+//   data=storedData/data_20190530163305.dat  sensor=gyroscope      id=11  indexID=1  xyz=5,6,7  T=8  wm=12  split=interpolation
+//   data=storedData/                         sensor=accelerometer  id=11  indexID=1  xyz=2,3,4  T=8  wm=12
+//
+// where sensor is accelerometer, gyroscope or magnetometer, the indexes are the positions of the values in each line of the data file,
+// wm is not used by the magnetometers, and split (optional) is extrapolation, interpolation or interpolation_and_extrapolation.
+// The relative paths are taken from the folder of the job file. If data is a folder, the sensor is calibrated with all the data stored in it
+// (see TriaxialCalibrator.calibrate_withAll).
+// The sensors of the same dataset form one job (the data file is read only once, see CalibrationDriver), and the jobs are run by a fixed number of threads.
+// Each job runs its calibrations in its own pool of threads, and the output of those threads is stored in a .log file next to its data, while the
+// progress of the jobs is printed. If the runner is interrupted (Ctrl+C), the jobs that have not started are cancelled, and the running ones are
+// interrupted: they stop at the next phase of the calibration (within CANCELLATION_GRACE seconds), and remove the files of their unfinished calibrations.
+//
+//   java -cp "lib/*" CalibrationRunner [-t threads] jobFile
+//
+// (lib is the folder with the jars of the exported sketch). The exit code is one of the EXIT_ parameters
+public class CalibrationRunner {
+  
+  // PARAMETERS
+  public static final int EXIT_SUCCESS = 0;  // all the jobs produced their calibrations
+  public static final int EXIT_FAILURE = 1;  // some job failed
+  public static final int EXIT_USAGE = 2;  // wrong arguments or job file
+  public static final int EXIT_CANCELLED = 130;  // the runner was interrupted
+  private static final long CANCELLATION_GRACE = 10;  // (s)
+  
+  // VARIABLES
+  // the calibrators are inner classes of the sketch, so they are created from an instance of it (that is never started)
+  private temperatureCalibrationAlgorithm sketch;
+  private ArrayList<Job> jobs;
+  private ExecutorService executor;
+  private ThreadOutput output;
+  private int parallelism;  // threads of the pool of each job
+  private volatile boolean finished;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public CalibrationRunner() {
+    this.sketch = new temperatureCalibrationAlgorithm();
+    this.jobs = new ArrayList<Job>();
+    this.finished = false;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public static void main( String[] args ) {
+    System.setProperty( "java.awt.headless" , "true" );
+    int threads = Math.max( 1 , Runtime.getRuntime().availableProcessors()/2 );
+    String jobFile = null;
+    try{
+      for(int i=0; i<args.length; i++){
+        if(  args[i].equals( "-t" )  &&  i+1 < args.length  ){
+          threads = Integer.parseInt( args[++i] );
+          if( threads < 1 ) throw new NumberFormatException( "the number of threads must be positive" );
+        }else if(  jobFile == null  &&  !args[i].startsWith( "-" )  ){
+          jobFile = args[i];
+        }else{
+          throw new IllegalArgumentException( "unknown argument " + args[i] );
+        }
+      }
+      if( jobFile == null ) throw new IllegalArgumentException( "no job file" );
+    }catch( Exception e ){
+      System.err.println( "Error: " + e.getMessage() );
+      System.err.println( "Usage: java CalibrationRunner [-t threads] jobFile" );
+      System.exit( EXIT_USAGE );
+    }
+    CalibrationRunner runner = new CalibrationRunner();
+    try{
+      runner.read_jobFile( jobFile );
+    }catch( Exception e ){
+      System.err.println( "Error: " + e.getMessage() );
+      System.exit( EXIT_USAGE );
+    }
+    System.exit( runner.run( threads ) );
+  }
+  
+  // reads the jobs described in the job file located in path. The sensors with the same data are grouped in the same job
+  public void read_jobFile( String path ) throws IOException {
+    File folder = new File( path ).getAbsoluteFile().getParentFile();
+    LinkedHashMap<String,Job> byData = new LinkedHashMap<String,Job>();
+    BufferedReader in = new BufferedReader( new FileReader( path ) );
+    try{
+      String line;
+      int l = 0;
+      while( ( line = in.readLine() ) != null ){
+        l++;
+        int comment = line.indexOf( '#' );
+        if( comment >= 0 ) line = line.substring( 0 , comment );
+        line = line.trim();
+        if( line.length() == 0 ) continue;
+        try{
+          LinkedHashMap<String,String> keys = new LinkedHashMap<String,String>();
+          String[] pairs = line.split( "\\s+" );
+          for(int p=0; p<pairs.length; p++){
+            int equal = pairs[p].indexOf( '=' );
+            if( equal <= 0 ) throw new IllegalArgumentException( "expected key=value instead of " + pairs[p] );
+            keys.put( pairs[p].substring( 0 , equal ) , pairs[p].substring( equal+1 ) );
+          }
+          File data = new File( this.get_key( keys , "data" ) );
+          if( !data.isAbsolute() ) data = new File( folder , data.getPath() );
+          if( !data.exists() ) throw new IllegalArgumentException( data + " does not exist" );
+          Job job = byData.get( data.getCanonicalPath() );
+          if( job == null ){
+            job = new Job( data.getCanonicalFile() );
+            byData.put( data.getCanonicalPath() , job );
+            this.jobs.add( job );
+          }
+          job.add_calibrator( this.new_calibrator( keys ) );
+          keys.keySet().removeAll( java.util.Arrays.asList( "data" , "sensor" , "id" , "indexID" , "xyz" , "T" , "wm" , "split" ) );
+          if( keys.size() > 0 ) throw new IllegalArgumentException( "unknown keys " + keys.keySet() );
+        }catch( IllegalArgumentException e ){
+          throw new IOException( path + ":" + l + ": " + e.getMessage() );
+        }
+      }
+    }finally{
+      in.close();
+    }
+    if( this.jobs.size() == 0 ) throw new IOException( path + " has no jobs." );
+  }
+  
+  // runs the jobs with theThreads threads, printing their progress. Returns the exit code
+  public int run( int theThreads ) {
+    this.output = new ThreadOutput( System.out );
+    System.setOut( this.output );
+    this.executor = Executors.newFixedThreadPool( theThreads );
+    this.parallelism = Math.max( 1 , Runtime.getRuntime().availableProcessors()/theThreads );
+    Runtime.getRuntime().addShutdownHook( new Thread(){
+      public void run() {
+        cancel();
+      }
+    });
+    long t0 = System.nanoTime();
+    this.print( "Running " + this.jobs.size() + " jobs with " + theThreads + " threads." );
+    CompletionService<Job> completion = new ExecutorCompletionService<Job>( this.executor );
+    for(int j=0; j<this.jobs.size(); j++) completion.submit( this.jobs.get( j ) );
+    int failures = 0;
+    for(int j=0; j<this.jobs.size(); j++){
+      Job job;
+      try{
+        job = completion.take().get();
+      }catch( Exception e ){
+        // the jobs return themselves even if they fail, so this only happens if the runner is interrupted
+        return EXIT_CANCELLED;
+      }
+      if( job.state == Job.FAILED ) failures++;
+      this.print( "[" + (j+1) + "/" + this.jobs.size() + "] " + job.get_report() );
+    }
+    this.executor.shutdown();
+    this.print( "Done: " + ( this.jobs.size() - failures ) + " jobs succeeded, " + failures + " failed (" + 1.0e-9*( System.nanoTime() - t0 ) + " s)." );
+    this.finished = true;
+    return ( failures > 0 )? EXIT_FAILURE : EXIT_SUCCESS;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // creates the calibrator described by keys
+  private temperatureCalibrationAlgorithm.TriaxialCalibrator new_calibrator( LinkedHashMap<String,String> keys ) {
+    String sensor = this.get_key( keys , "sensor" );
+    temperatureCalibrationAlgorithm.TriaxialCalibrator calibrator;
+    if( sensor.equals( "accelerometer" ) ){
+      calibrator = this.sketch.new AccelerometerCalibrator();
+    }else if( sensor.equals( "gyroscope" ) ){
+      calibrator = this.sketch.new GyroscopeCalibrator();
+    }else if( sensor.equals( "magnetometer" ) ){
+      calibrator = this.sketch.new MagnetometerCalibrator();
+    }else{
+      throw new IllegalArgumentException( "unknown sensor " + sensor );
+    }
+    calibrator.set_sensorID( this.get_index( keys , "id" ) );
+    calibrator.set_indexID( this.get_index( keys , "indexID" ) );
+    String[] xyz = this.get_key( keys , "xyz" ).split( "," );
+    if( xyz.length != 3 ) throw new IllegalArgumentException( "xyz must have 3 indexes" );
+    calibrator.set_indexMeasurements( this.parse_index( "xyz" , xyz[0] ) , this.parse_index( "xyz" , xyz[1] ) , this.parse_index( "xyz" , xyz[2] ) );
+    calibrator.set_indexTemperature( this.get_index( keys , "T" ) );
+    if( keys.containsKey( "wm" ) ){
+      calibrator.set_indexAngularVelocity( this.get_index( keys , "wm" ) );
+    }else if( !sensor.equals( "magnetometer" ) ){
+      throw new IllegalArgumentException( "missing key wm" );
+    }
+    if( keys.containsKey( "split" ) ){
+      String split = keys.get( "split" );
+      if( split.equals( "extrapolation" ) ){
+        calibrator.set_splitStrategy( temperatureCalibrationAlgorithm.TriaxialCalibrator.EXTRAPOLATION );
+      }else if( split.equals( "interpolation" ) ){
+        calibrator.set_splitStrategy( temperatureCalibrationAlgorithm.TriaxialCalibrator.INTERPOLATION );
+      }else if( split.equals( "interpolation_and_extrapolation" ) ){
+        calibrator.set_splitStrategy( temperatureCalibrationAlgorithm.TriaxialCalibrator.INTERPOLATION_AND_EXTRAPOLATION );
+      }else{
+        throw new IllegalArgumentException( "unknown split strategy " + split );
+      }
+    }
+    return calibrator;
+  }
+  
+  private String get_key( LinkedHashMap<String,String> keys , String key ) {
+    String value = keys.get( key );
+    if( value == null ) throw new IllegalArgumentException( "missing key " + key );
+    return value;
+  }
+  
+  private int get_index( LinkedHashMap<String,String> keys , String key ) {
+    return this.parse_index( key , this.get_key( keys , key ) );
+  }
+  
+  private int parse_index( String key , String value ) {
+    try{
+      int index = Integer.parseInt( value );
+      if( index < 0 ) throw new NumberFormatException();
+      return index;
+    }catch( NumberFormatException e ){
+      throw new IllegalArgumentException( key + " must be a non-negative integer" );
+    }
+  }
+  
+  // prints a line of progress in the console (the output of the jobs goes to their .log files)
+  private void print( String line ) {
+    this.output.console.println( line );
+    this.output.console.flush();
+  }
+  
+  // cancels the jobs that have not started, and interrupts the running ones, waiting for them (called when the runner is interrupted)
+  private void cancel() {
+    if(  this.finished  ||  this.executor == null  ) return;
+    this.print( "Cancelling..." );
+    this.executor.shutdownNow();
+    try{
+      this.executor.awaitTermination( CANCELLATION_GRACE + 1 , TimeUnit.SECONDS );
+    }catch( InterruptedException e ){
+    }
+    for(int j=0; j<this.jobs.size(); j++){
+      Job job = this.jobs.get( j );
+      if( job.state == Job.PENDING  ||  job.state == Job.RUNNING  ||  job.state == Job.CANCELLED ) this.print( "  cancelled: " + job.data );
+    }
+    Runtime.getRuntime().halt( EXIT_CANCELLED );
+  }
+  
+  
+  // PRIVATE CLASSES
+  
+  // calibration of the sensors of one dataset (a data file, or a folder with the data of previous calibrations).
+  // The calibrations are run in a pool of threads of the job (it is also the factory of those threads)
+  private class Job implements Callable<Job> , ForkJoinPool.ForkJoinWorkerThreadFactory {
+    
+    static final int PENDING = 0;
+    static final int RUNNING = 1;
+    static final int SUCCEEDED = 2;
+    static final int FAILED = 3;
+    static final int CANCELLED = 4;
+    
+    private File data;
+    private ArrayList<temperatureCalibrationAlgorithm.TriaxialCalibrator> calibrators;
+    private volatile int state;
+    private String message;
+    private double time;  // (s)
+    private PrintStream log;
+    
+    public Job( File theData ) {
+      this.data = theData;
+      this.calibrators = new ArrayList<temperatureCalibrationAlgorithm.TriaxialCalibrator>();
+      this.state = PENDING;
+    }
+    
+    public void add_calibrator( temperatureCalibrationAlgorithm.TriaxialCalibrator theCalibrator ) {
+      this.calibrators.add( theCalibrator );
+    }
+    
+    // calibrates the sensors. The job fails if it throws an exception, or if some calibrator does not complete its calibration
+    public Job call() {
+      this.state = RUNNING;
+      print( "Started " + this.data + " (" + this.get_sensors() + ")" );
+      long t0 = System.nanoTime();
+      final String dataPath = ( this.data.isDirectory() )? this.data.getPath() + File.separator : this.data.getParent() + File.separator;
+      final String fileName = this.data.getName().replace( ".dat" , "" );
+      ForkJoinPool pool = null;
+      try{
+        this.log = new PrintStream( new FileOutputStream( ( this.data.isDirectory() )? dataPath + "calibration.log" : dataPath + fileName + ".log" ) , true );
+        pool = new ForkJoinPool( parallelism , this , null , false );
+        Future<?> calibration = pool.submit( new Runnable(){
+          public void run() {
+            calibrate( dataPath , fileName );
+          }
+        });
+        try{
+          calibration.get();
+        }catch( InterruptedException e ){
+          // the runner is cancelled: the calibration stops at the next phase, and the files of the unfinished calibrations are removed
+          pool.shutdownNow();
+          if( pool.awaitTermination( CANCELLATION_GRACE , TimeUnit.SECONDS ) ) this.remove_unfinished();
+          this.state = CANCELLED;
+        }catch( ExecutionException e ){
+          throw e.getCause();
+        }
+        if( this.state == RUNNING ){
+          // every sensor must have its calibration (a calibrator without enough data only prints a message)
+          String missing = "";
+          for(int c=0; c<this.calibrators.size(); c++){
+            if( !this.calibrators.get( c ).is_calibrated() ) missing += " " + this.calibrators.get( c ).get_sensorID() + this.calibrators.get( c ).get_sensorType();
+          }
+          if( missing.length() > 0 ){
+            this.message = "no calibration for" + missing;
+            this.state = FAILED;
+          }else{
+            this.state = SUCCEEDED;
+          }
+        }
+      }catch( Throwable e ){
+        if( this.log != null ) e.printStackTrace( this.log );
+        this.message = e.toString();
+        this.state = FAILED;
+      }finally{
+        if( pool != null ) pool.shutdown();
+        if( this.log != null ) this.log.close();
+      }
+      this.time = 1.0e-9*( System.nanoTime() - t0 );
+      return this;
+    }
+    
+    // creates the threads of the pool of the job, whose output goes to the .log file of the job
+    public ForkJoinWorkerThread newThread( ForkJoinPool pool ) {
+      return new JobThread( pool , this.log );
+    }
+    
+    // returns the IDs and types of the sensors of the job
+    public String get_sensors() {
+      String sensors = "";
+      for(int c=0; c<this.calibrators.size(); c++){
+        sensors += ( ( c > 0 )? " " : "" ) + this.calibrators.get( c ).get_sensorID() + this.calibrators.get( c ).get_sensorType();
+      }
+      return sensors;
+    }
+    
+    public String get_report() {
+      String result = ( this.state == SUCCEEDED )? "succeeded" : ( this.state == CANCELLED )? "cancelled" : "FAILED (" + this.message + ")";
+      return this.data + ": " + result + " in " + this.time + " s";
+    }
+    
+    // calibrates the sensors with the data of the job (run in the pool of the job)
+    private void calibrate( String dataPath , String fileName ) {
+      if( this.data.isDirectory() ){
+        for(int c=0; c<this.calibrators.size(); c++) this.calibrators.get( c ).calibrate_withAll( dataPath );
+      }else{
+        temperatureCalibrationAlgorithm.CalibrationDriver driver = sketch.new CalibrationDriver();
+        for(int c=0; c<this.calibrators.size(); c++) driver.add_calibrator( this.calibrators.get( c ) );
+        driver.calibrate_withFile( dataPath , fileName );
+      }
+    }
+    
+    // removes the files written by the calibrations that were not completed
+    private void remove_unfinished() {
+      for(int c=0; c<this.calibrators.size(); c++){
+        if( this.calibrators.get( c ).is_calibrated() ) continue;
+        ArrayList<String> outputs = this.calibrators.get( c ).get_outputs();
+        for(int i=0; i<outputs.size(); i++) new File( outputs.get( i ) ).delete();
+      }
+    }
+    
+  }
+  
+  // thread of the pool of a job, that sends its output to the .log file of the job
+  private class JobThread extends ForkJoinWorkerThread {
+    
+    private PrintStream log;
+    
+    public JobThread( ForkJoinPool pool , PrintStream theLog ) {
+      super( pool );
+      this.log = theLog;
+    }
+    
+    protected void onStart() {
+      super.onStart();
+      output.set_target( this.log );
+    }
+    
+  }
+  
+  // console that sends the output of each thread to its own target (if it has one), so the output of the jobs does not get mixed
+  private static class ThreadOutput extends PrintStream {
+    
+    private PrintStream console;
+    private ThreadLocal<PrintStream> target;
+    
+    public ThreadOutput( PrintStream theConsole ) {
+      super( theConsole , true );
+      this.console = theConsole;
+      this.target = new ThreadLocal<PrintStream>();
+    }
+    
+    // sets the target of the output of the current thread (null for the console)
+    public void set_target( PrintStream theTarget ) {
+      if( theTarget == null ){
+        this.target.remove();
+      }else{
+        this.target.set( theTarget );
+      }
+    }
+    
+    public void write( int b ) {
+      this.get_target().write( b );
+    }
+    
+    public void write( byte[] buf , int off , int len ) {
+      this.get_target().write( buf , off , len );
+    }
+    
+    public void flush() {
+      this.get_target().flush();
+    }
+    
+    private PrintStream get_target() {
+      PrintStream theTarget = this.target.get();
+      return ( theTarget != null )? theTarget : this.console;
+    }
+    
+  }
+  
+}
\ No newline at end of file
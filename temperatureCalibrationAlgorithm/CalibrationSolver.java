@@ -0,0 +1,647 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.*;
+
+
+// class that holds the state of the iterative method used by TriaxialCalibrator to compute the calibration of one polynomial order.
+// It only reads the tensors, so several solvers (one for each polynomial order) can work at the same time with the same tensors
+class CalibrationSolver {
+  
+  // PARAMETERS
+  private static final boolean LEVENBERG_MARQUARDT = true;  // if false, the undamped Gauss-Newton iterations are used
+  private static final boolean ELLIPSOID_FIT_INITIALIZATION = true;  // if true, the iterations start from the closed-form fit of the ellipsoid (see initialize_zk) instead of the identity
+  private static final int ELLIPSOID_FIT_REPETITIONS = 4;  // times that the ellipsoid is fitted, updating c^T*c
+  private static final int MAX_CALIBRATION_ITERATIONS_WITHOUT_IMPROVEMENT = 20;  // the Gauss-Newton iterations will end if the solution does not improve after MAX_ITERATIONS_WITHOUT_IMPROVEMENT iterations
+  private static final int MAX_CALIBRATION_ITERATIONS = 1000;
+  private static final double INITIAL_DAMPING = 1.0e-3;  // initial lambda of the Levenberg-Marquardt iterations (relative to the diagonal of J^T*W*J)
+  private static final double MAX_DAMPING = 1.0e16;  // the Levenberg-Marquardt iterations will end if lambda grows over this value (no step reduces the cost)
+  private static final double GRADIENT_TOLERANCE = 1.0e-8;  // the Levenberg-Marquardt iterations will end if every |(J^T*W*dy)_i| falls below GRADIENT_TOLERANCE*sqrt( (J^T*W*J)_ii * cost ) (the cosine between the residuals and each column of J)
+  private static final double STEP_TOLERANCE = 1.0e-8;  // the Levenberg-Marquardt iterations will end if |dz| falls below STEP_TOLERANCE times |z| (both scaled with the diagonal of J^T*W*J)
+  // position (a,b) in the matrix A of each element of z (K11,K21,K22,K31,K32,K33,c1,c2,c3)
+  private static final int[] A_INDEX = { 0 , 1 , 1 , 2 , 2 , 2 , 0 , 1 , 2 };
+  private static final int[] B_INDEX = { 0 , 0 , 1 , 0 , 1 , 2 , 3 , 3 , 3 };
+  
+  // VARIABLES
+  // tensors built with the calibration measurements
+  private CalibrationTensors tensors;
+  // order of the polynomial used for the temperature dependence
+  private int N;
+  // current approximation to the solution
+  private double[] zk;  // z_k = ( (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(0) , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(1) , ... , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(N) )_k  (9*Nx1)
+  // optimal approximation to the solution
+  private double[] z;  // z = ( (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(0) , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(1) , ... , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(N) )_optimal  (9*Nx1)
+  // coefficients of the polynomial matrix A: A^(n)
+  private double[][][] A;
+  // contractions of A with the tensors (see contract_tensors)
+  private double[][][][][] P;  // (3Nx3x4x4x4)
+  private double[][][][][] Q;  // (2Nx3x4x3x4)
+  private double[][][] M;  // (2Nx4x4)
+  private double[][][] R;  // (2Nx4x4)
+  // workspace of the iterations (sized for the maximum order, so the iterations do not allocate memory)
+  private double[] JTWdy;  // J^T*W*( y^2 - f )  (9*Nx1)
+  private double[] JTWJ;  // J^T*W*J stored by rows with 9*N columns  (9*Nx9*N)
+  private double[] S;  // damped J^T*W*J, and its Cholesky decomposition  (9*Nx9*N)
+  private double[] D;  // diagonal of J^T*W*J
+  private double[] dz;
+  private double[] zPrevious;
+  // workspace of initialize_zk
+  private double[] E;  // normal equations of the ellipsoid fit (9x9)
+  private double[] e;  // (9x1)
+  private double[] scale;  // (9x1)
+  // workspace of get_A and get_correctedVector
+  private double[][] AT;
+  private double[] vc;
+  // report of the last calibration
+  private int iterations;
+  private long time;  // (ns)
+  private String initialization;  // how the first approximation to the solution was obtained
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public CalibrationSolver( int maxN , CalibrationTensors theTensors ) {
+    this.tensors = theTensors;
+    this.zk = new double[9*(maxN+1)];
+    this.z = new double[9*(maxN+1)];
+    this.A = new double[maxN+1][3][4];
+    this.P = new double[3*maxN+1][3][4][4][4];
+    this.Q = new double[2*maxN+1][3][4][3][4];
+    this.M = new double[2*maxN+1][4][4];
+    this.R = new double[2*maxN+1][4][4];
+    int maxNz = 9*(maxN+1);
+    this.JTWdy = new double[maxNz];
+    this.JTWJ = new double[maxNz*maxNz];
+    this.S = new double[maxNz*maxNz];
+    this.D = new double[maxNz];
+    this.dz = new double[maxNz];
+    this.zPrevious = new double[maxNz];
+    this.E = new double[9*9];
+    this.e = new double[9];
+    this.scale = new double[9];
+    this.AT = new double[3][4];
+    this.vc = new double[3];
+    this.initialization = "identity";
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // returns a description of the parameters of the iterations (they change the solutions, so they are part of the configuration of the calibrators)
+  public static String get_configuration() {
+    return "levenbergMarquardt=" + LEVENBERG_MARQUARDT + " ellipsoidFit=" + ELLIPSOID_FIT_INITIALIZATION + "," + ELLIPSOID_FIT_REPETITIONS +
+           " iterations=" + MAX_CALIBRATION_ITERATIONS + "," + MAX_CALIBRATION_ITERATIONS_WITHOUT_IMPROVEMENT + " damping=" + INITIAL_DAMPING + "," + MAX_DAMPING +
+           " tolerances=" + GRADIENT_TOLERANCE + "," + STEP_TOLERANCE;
+  }
+  
+  // returns the order of the polynomial of the last calibration
+  public int get_N() {
+    return this.N;
+  }
+  
+  // returns the optimal approximation to the solution
+  public double[] get_z() {
+    return this.z;
+  }
+  
+  // returns the number of iterations of the last calibration
+  public int get_iterations() {
+    return this.iterations;
+  }
+  
+  // returns the time spent in the last calibration (ms)
+  public double get_time() {
+    return 1.0e-6*this.time;
+  }
+  
+  // returns how the first approximation to the solution of the last calibration was obtained ("identity", "ellipsoid fit", "warm start", or "copy")
+  public String get_initialization() {
+    return this.initialization;
+  }
+  
+  // resets the current approximation to the solution
+  public void reset_zk() {
+    for(int i=0; i<this.zk.length; i++){
+      this.zk[i] = 0.0;
+    }
+    this.zk[0] = 1.0;
+    this.zk[1] = 0.0;   this.zk[2] = 1.0;
+    this.zk[3] = 0.0;   this.zk[4] = 0.0;   this.zk[5] = 1.0;
+    this.zk[6] = 0.0;   this.zk[7] = 0.0;   this.zk[8] = 0.0;
+    this.initialization = "identity";
+  }
+  
+  // sets the current approximation to the solution with the closed-form fit of an ellipsoid (order 0) to the measurements of the tensors.
+  // The model y^2 = x^T*M*x (with x = (x1,x2,x3,1)) is linear in the symmetric matrix M = A^T*A = ( K^T*K , K^T*c ; c^T*K , c^T*c ), so M is fitted
+  // with linear least squares using only X4[0] and Y2[0], and A = (K c) is recovered with the Cholesky decomposition of K^T*K.
+  // The last element, c^T*c, is not fitted (if y is constant, M = (0 0 ; 0 y^2) would be a perfect fit); it is fixed to the value given by the
+  // rest of M, and the fit is repeated a few times. If the fit fails (the measurements do not determine an ellipsoid), the identity is used (see reset_zk)
+  public void initialize_zk() {
+    this.reset_zk();
+    double[][] X4 = this.tensors.X4;
+    double[][] Y2 = this.tensors.Y2;
+    int[][][][] iX4 = CalibrationTensors.iX4;
+    int[][] iY2 = CalibrationTensors.iY2;
+    int[][] pY2 = CalibrationTensors.pY2;
+    int np = pY2.length - 1;  // the last element of M is (3,3)
+    double cc = 0.0;  // c^T*c
+    double K11 = 0.0 , K21 = 0.0 , K22 = 0.0 , K31 = 0.0 , K32 = 0.0 , K33 = 0.0 , c1 = 0.0 , c2 = 0.0 , c3 = 0.0;
+    for(int r=0; r<ELLIPSOID_FIT_REPETITIONS; r++){
+      // normal equations E*m = e for the unique elements of M (the elements out of the diagonal appear twice in x^T*M*x)
+      for(int p=0; p<np; p++){
+        double mp = ( pY2[p][0] == pY2[p][1] )? 1.0 : 2.0;
+        for(int q=0; q<np; q++){
+          double mq = ( pY2[q][0] == pY2[q][1] )? 1.0 : 2.0;
+          this.E[p*np+q] = mp*mq*X4[0][ iX4[ pY2[p][0] ][ pY2[p][1] ][ pY2[q][0] ][ pY2[q][1] ] ];
+        }
+        this.e[p] = mp*( Y2[0][p] - cc*X4[0][ iX4[ pY2[p][0] ][ pY2[p][1] ][3][3] ] );
+      }
+      // the equations are scaled with their diagonal, because the elements of X4 range from 1 to the fourth power of the raw measurements
+      for(int p=0; p<np; p++){
+        if( !( this.E[p*np+p] > 0.0 ) ) return;
+        this.scale[p] = 1.0/Math.sqrt( this.E[p*np+p] );
+      }
+      for(int p=0; p<np; p++){
+        for(int q=0; q<np; q++) this.E[p*np+q] *= this.scale[p]*this.scale[q];
+        this.e[p] *= this.scale[p];
+      }
+      this.solve( this.E , this.e , np );
+      for(int p=0; p<np; p++) this.e[p] *= this.scale[p];  // now e stores the unique elements of M
+      // K^T*K (with K lower triangular) is decomposed beginning with its last row and column
+      double[] m = this.e;
+      K33 = Math.sqrt( m[ iY2[2][2] ] );
+      K32 = m[ iY2[1][2] ]/K33;
+      K31 = m[ iY2[0][2] ]/K33;
+      K22 = Math.sqrt( m[ iY2[1][1] ] - K32*K32 );
+      K21 = ( m[ iY2[0][1] ] - K32*K31 )/K22;
+      K11 = Math.sqrt( m[ iY2[0][0] ] - K21*K21 - K31*K31 );
+      // and c is the solution of K^T*c = (M_14,M_24,M_34)
+      c3 = m[ iY2[2][3] ]/K33;
+      c2 = ( m[ iY2[1][3] ] - K32*c3 )/K22;
+      c1 = ( m[ iY2[0][3] ] - K21*c2 - K31*c3 )/K11;
+      cc = c1*c1 + c2*c2 + c3*c3;
+      if( !( K11 > 0.0  &&  K22 > 0.0  &&  K33 > 0.0 )  ||  Double.isNaN( cc )  ||  Double.isInfinite( cc ) ) return;
+    }
+    this.zk[0] = K11;
+    this.zk[1] = K21;   this.zk[2] = K22;
+    this.zk[3] = K31;   this.zk[4] = K32;   this.zk[5] = K33;
+    this.zk[6] = c1;    this.zk[7] = c2;    this.zk[8] = c3;
+    this.initialization = "ellipsoid fit";
+  }
+  
+  // sets the current approximation to the solution with the solution of a lower (or equal) order, n0. The coefficients of higher orders are set to zero
+  public void set_zk( double[] z0 , int n0 ) {
+    for(int i=0; i<this.zk.length; i++){
+      this.zk[i] = ( i < 9*(n0+1) )? z0[i] : 0.0;
+    }
+    this.initialization = "warm start";
+  }
+  
+  // computes the temperature calibration of theN order. The cost (or the errors) of each iteration are printed in lmaFile (if it is not null)
+  public void compute_calibration( int theN , PrintWriter lmaFile ){
+    if( ELLIPSOID_FIT_INITIALIZATION ){
+      this.initialize_zk();
+    }else{
+      this.reset_zk();
+    }
+    this.iterate( theN , lmaFile );
+  }
+  
+  // computes the temperature calibration of theN order starting from the solution of theInitial solver (its order must be lower or equal than theN)
+  public void compute_calibration( int theN , CalibrationSolver theInitial , PrintWriter lmaFile ){
+    this.set_zk( theInitial.get_z() , theInitial.get_N() );
+    this.iterate( theN , lmaFile );
+  }
+  
+  // takes the solution of theSolver without iterating (it must use the same tensors, so its solution is also the solution of this solver)
+  public void copy_solution( CalibrationSolver theSolver ) {
+    if( theSolver.tensors != this.tensors ) throw new IllegalArgumentException( "The solution of a solver with other tensors can not be copied." );
+    this.N = theSolver.N;
+    for(int i=0; i<this.z.length; i++){
+      this.z[i] = ( i < 9*(this.N+1) )? theSolver.z[i] : 0.0;
+      this.zk[i] = this.z[i];
+    }
+    this.iterations = 0;
+    this.time = 0;
+    this.initialization = "copy";
+  }
+  
+  // computes the cost \sum_m w_m ( y_m^2 - f_m )^2 / W of the optimal approximation to the solution with the measurements of theTensors (that can be different from the ones used to compute the solution)
+  public double compute_cost( CalibrationTensors theTensors ) {
+    for(int i=0; i<9*(this.N+1); i++) this.zk[i] = this.z[i];
+    this.update_A();
+    this.contract_M();
+    this.contract_R( theTensors );
+    return this.get_cost( theTensors );
+  }
+  
+  // computes the Levenberg-Marquardt step ( (J^T*W*J + lambda*diag(J^T*W*J))*dz = J^T*W*dy ) from the optimal approximation to the solution, without taking it.
+  // It is the work of each iteration (J^T*W*dy, J^T*W*J, and the solution of the damped system), so the benchmarks can measure it (the returned step is overwritten in the next call)
+  public double[] compute_step( double lambda ) {
+    int nz = 9*(this.N+1);
+    for(int i=0; i<nz; i++) this.zk[i] = this.z[i];
+    this.update_A();
+    this.contract_tensors();
+    this.compute_JTWdy();
+    this.compute_JTWJ();
+    for(int i=0; i<nz; i++){
+      for(int j=0; j<=i; j++) this.S[i*nz+j] = this.JTWJ[i*nz+j];
+      this.S[i*nz+i] += lambda*this.JTWJ[i*nz+i];
+      this.dz[i] = this.JTWdy[i];
+    }
+    this.solve( this.S , this.dz , nz );
+    return this.dz;
+  }
+  
+  // gets the matrix A for the temperature T with the optimal approximation to the solution (the returned matrix is overwritten in the next call)
+  public double[][] get_A( double T ) {
+    double[][] AT = this.AT;
+    for(int a=0; a<3; a++){
+      for(int b=0; b<4; b++) AT[a][b] = 0.0;
+    }
+    double Tn = 1.0;
+    for(int n=0; n<=this.N; n++){
+      int n9 = 9*n;
+      AT[0][0] += this.z[n9]*Tn;     AT[0][1] += 0.0;               AT[0][2] += 0.0;               AT[0][3] += this.z[n9+6]*Tn;
+      AT[1][0] += this.z[n9+1]*Tn;   AT[1][1] += this.z[n9+2]*Tn;   AT[1][2] += 0.0;               AT[1][3] += this.z[n9+7]*Tn;
+      AT[2][0] += this.z[n9+3]*Tn;   AT[2][1] += this.z[n9+4]*Tn;   AT[2][2] += this.z[n9+5]*Tn;   AT[2][3] += this.z[n9+8]*Tn;
+      Tn *= T;
+    }
+    return AT;
+  }
+  
+  // gets the corrected vector with the optimal approximation to the solution (the returned vector is overwritten in the next call)
+  public double[] get_correctedVector( double x , double y , double z , double T ) {
+    double[][] AT = this.get_A( T );
+    this.vc[0] = AT[0][0]*x + AT[0][1]*y + AT[0][2]*z + AT[0][3];
+    this.vc[1] = AT[1][0]*x + AT[1][1]*y + AT[1][2]*z + AT[1][3];
+    this.vc[2] = AT[2][0]*x + AT[2][1]*y + AT[2][2]*z + AT[2][3];
+    return this.vc;
+  }
+  
+  // gets the corrected module with the optimal approximation to the solution
+  public double get_correctedModule( double x , double y , double z , double T ) {
+    double[] vc = this.get_correctedVector( x , y , z , T );
+    return Math.sqrt( vc[0]*vc[0] + vc[1]*vc[1] + vc[2]*vc[2] );
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // improves the current approximation to the solution until it converges to the temperature calibration of theN order
+  private void iterate( int theN , PrintWriter lmaFile ){
+    long t0 = System.nanoTime();
+    this.N = theN;
+    if( LEVENBERG_MARQUARDT ){
+      this.compute_LevenbergMarquardt( lmaFile );
+    }else{
+      this.compute_GaussNewton( lmaFile );
+    }
+    this.time = System.nanoTime() - t0;
+  }
+  
+  // computes the solution using the Levenberg-Marquardt algorithm. The damping lambda is adapted with the gain ratio
+  // rho = ( actual reduction of the cost )/( reduction predicted by the linear model ), and the steps with rho <= 0 are rejected
+  private void compute_LevenbergMarquardt( PrintWriter lmaFile ){
+    int nz = 9*(this.N+1);
+    double[] S = this.S;
+    double[] D = this.D;
+    double[] dz = this.dz;
+    double[] zPrevious = this.zPrevious;
+    double[] JTWdy = this.JTWdy;
+    double[] JTWJ = this.JTWJ;
+    // we start with the cost, J^T*W*dy and J^T*W*J of the initial approximation
+    this.update_A();
+    this.contract_tensors();
+    double F = this.get_cost( this.tensors );
+    this.compute_JTWdy();
+    this.compute_JTWJ();
+    double lambda = INITIAL_DAMPING;
+    double nu = 2.0;
+    int k = 0;
+    while( k < MAX_CALIBRATION_ITERATIONS ){
+      if( lmaFile != null ){
+        lmaFile.println( k + " " + F + " " + lambda );
+      }
+      // we compute the damped step ( (J^T*W*J + lambda*diag(J^T*W*J))*dz = J^T*W*dy ), and if the gradient vanishes, we are at the minimum
+      boolean gradientVanishes = true;
+      for(int i=0; i<nz; i++){
+        for(int j=0; j<=i; j++) S[i*nz+j] = JTWJ[i*nz+j];  // the Cholesky decomposition only uses the lower triangle
+        D[i] = JTWJ[i*nz+i];
+        S[i*nz+i] += lambda*D[i];
+        dz[i] = JTWdy[i];
+        if( Math.abs( JTWdy[i] ) > GRADIENT_TOLERANCE*Math.sqrt( D[i]*F ) ) gradientVanishes = false;
+      }
+      if( gradientVanishes ) break;
+      this.solve( S , dz , nz );
+      // if the step is negligible compared with the solution, we are at the minimum
+      double dzNorm = 0.0;
+      double zNorm = 0.0;
+      for(int i=0; i<nz; i++){
+        dzNorm += D[i]*dz[i]*dz[i];
+        zNorm += D[i]*this.zk[i]*this.zk[i];
+      }
+      if( Math.sqrt( dzNorm ) <= STEP_TOLERANCE*( Math.sqrt( zNorm ) + STEP_TOLERANCE ) ) break;
+      // reduction of the cost predicted by the linear model ( 2*dz^T*J^T*W*dy - dz^T*J^T*W*J*dz )
+      double L = 0.0;
+      for(int i=0; i<nz; i++) L += dz[i]*( lambda*D[i]*dz[i] + JTWdy[i] );
+      // we try the step
+      for(int i=0; i<nz; i++){
+        zPrevious[i] = this.zk[i];
+        this.zk[i] += dz[i];
+      }
+      this.correct_orientation();
+      this.update_A();
+      this.contract_tensors();
+      double Fnew = this.get_cost( this.tensors );
+      double rho = ( F - Fnew )/L;
+      if( L > 0.0  &&  rho > 0.0 ){
+        // the step is accepted, and lambda decreases (more if the linear model was good)
+        F = Fnew;
+        this.compute_JTWdy();
+        this.compute_JTWJ();
+        lambda *= Math.max( 1.0/3.0 , 1.0 - Math.pow( 2.0*rho - 1.0 , 3 ) );
+        nu = 2.0;
+      }else{
+        // the step is rejected, and lambda increases
+        for(int i=0; i<nz; i++) this.zk[i] = zPrevious[i];
+        lambda *= nu;
+        nu *= 2.0;
+        if( lambda > MAX_DAMPING ) break;
+      }
+      k++;
+    }  // end iterations
+    for(int i=0; i<nz; i++) this.z[i] = this.zk[i];
+    this.iterations = k;
+  }  // end compute_LevenbergMarquardt()
+  
+  // computes the solution using the undamped Gauss-Newton algorithm (the best solution in terms of |dz| is kept)
+  private void compute_GaussNewton( PrintWriter lmaFile ){
+    double minError = Double.MAX_VALUE;
+    int itWithoutImprovement = 0;
+    int k;
+    for(k=0; k<MAX_CALIBRATION_ITERATIONS; k++){
+      // first of all we update the calibration matrix, and we contract it with the tensors
+      this.update_A();
+      this.contract_tensors();
+      // we compute the vector J^T*W*dy
+      this.compute_JTWdy();
+      double[] JTWdy = this.JTWdy;
+      // we compute the J^T*W*J matrix
+      this.compute_JTWJ();
+      // we compute the next delta in the solution approximation ( delta^T*(J^T*J) = [J^T*(y-f)]^T )
+      this.solve( this.JTWJ , JTWdy , 9*(this.N+1) );  // now dz is stored in JTWdy
+      // we compute the current error in the search for the zeros
+      double err = 0.0;
+      for(int i=0; i<9*(this.N+1); i++) err += JTWdy[i]*JTWdy[i];
+      if( lmaFile != null ){
+        lmaFile.println( k + " " + err );
+      }
+      if( err < minError ){
+        for(int i=0; i<9*(this.N+1); i++) this.z[i] = this.zk[i];
+        minError = err;
+        itWithoutImprovement = 0;
+      }else{
+        itWithoutImprovement++;
+        if( itWithoutImprovement > MAX_CALIBRATION_ITERATIONS_WITHOUT_IMPROVEMENT ) break;
+      }
+      // we update the solution
+      for(int i=0; i<9*(this.N+1); i++) this.zk[i] += JTWdy[i];
+      // and now we correct for a right-handed orientation
+      this.correct_orientation();
+    }  // end iterations
+    this.iterations = k;
+  }  // end compute_GaussNewton()
+  
+  // corrects the current approximation to the solution for a right-handed orientation
+  private void correct_orientation(){
+    if( this.zk[0] < 0.0 ) this.zk[0] = -this.zk[0];
+    if( this.zk[2] < 0.0 ) this.zk[2] = -this.zk[2];
+    if( this.zk[5] < 0.0 ) this.zk[5] = -this.zk[5];
+  }
+  
+  // updates the matrix A with the current approximation to the solution
+  private void update_A(){
+    for(int n=0; n<=this.N; n++){
+      int n9 = 9*n;
+      this.A[n][0][0] = this.zk[n9];     this.A[n][0][1] = 0.0;             this.A[n][0][2] = 0.0;             this.A[n][0][3] = this.zk[n9+6];
+      this.A[n][1][0] = this.zk[n9+1];   this.A[n][1][1] = this.zk[n9+2];   this.A[n][1][2] = 0.0;             this.A[n][1][3] = this.zk[n9+7];
+      this.A[n][2][0] = this.zk[n9+3];   this.A[n][2][1] = this.zk[n9+4];   this.A[n][2][2] = this.zk[n9+5];   this.A[n][2][3] = this.zk[n9+8];
+    }
+  }
+  
+  // contracts the matrix A with the tensors (once per iteration), so J^T*W*J and J^T*W*( y^2 - f ) are assembled from small intermediate tensors
+  private void contract_tensors(){
+    double[][] X4 = this.tensors.X4;
+    int[][][][] iX4 = CalibrationTensors.iX4;
+    // P[s][a1][b1][j2][b2] = \sum_{n1} \sum_{j1} A^(n1)_{a1 j1} X4[n1+s]_{j1 b1 j2 b2}
+    for(int s=0; s<=3*this.N; s++){
+      for(int a1=0; a1<3; a1++){
+        for(int b1=0; b1<4; b1++){
+          for(int j2=0; j2<4; j2++){
+            for(int b2=0; b2<4; b2++){
+              double sum = 0.0;
+              for(int n1=0; n1<=this.N; n1++){
+                for(int j1=0; j1<=a1; j1++){  // A^(n)_{a j} = 0 for a < j < 3
+                  sum += this.A[n1][a1][j1]*X4[n1+s][ iX4[j1][b1][j2][b2] ];
+                }
+                sum += this.A[n1][a1][3]*X4[n1+s][ iX4[3][b1][j2][b2] ];
+              }
+              this.P[s][a1][b1][j2][b2] = sum;
+            }
+          }
+        }
+      }
+    }
+    // Q[t][a1][b1][a2][b2] = \sum_{n2} \sum_{j2} A^(n2)_{a2 j2} P[t+n2][a1][b1][j2][b2]
+    for(int t=0; t<=2*this.N; t++){
+      for(int a1=0; a1<3; a1++){
+        for(int b1=0; b1<4; b1++){
+          for(int a2=0; a2<3; a2++){
+            for(int b2=0; b2<4; b2++){
+              double sum = 0.0;
+              for(int n2=0; n2<=this.N; n2++){
+                for(int j2=0; j2<=a2; j2++){
+                  sum += this.A[n2][a2][j2]*this.P[t+n2][a1][b1][j2][b2];
+                }
+                sum += this.A[n2][a2][3]*this.P[t+n2][a1][b1][3][b2];
+              }
+              this.Q[t][a1][b1][a2][b2] = sum;
+            }
+          }
+        }
+      }
+    }
+    this.contract_M();
+    this.contract_R( this.tensors );
+  }
+  
+  // computes the polynomial A^T*A
+  private void contract_M(){
+    // M[s][j1][k] = \sum_{n+l=s} \sum_i A^(n)_{i j1} A^(l)_{i k}  (the polynomial A^T*A)
+    for(int s=0; s<=2*this.N; s++){
+      for(int j1=0; j1<4; j1++){
+        for(int k=j1; k<4; k++){
+          double sum = 0.0;
+          for(int n=Math.max( 0 , s-this.N ); n<=Math.min( s , this.N ); n++){
+            int l = s-n;
+            for(int i=0; i<3; i++) sum += this.A[n][i][j1]*this.A[l][i][k];
+          }
+          this.M[s][j1][k] = sum;
+          this.M[s][k][j1] = sum;
+        }
+      }
+    }
+  }
+  
+  // contracts the polynomial A^T*A with the fourth-order tensor of theTensors
+  private void contract_R( CalibrationTensors theTensors ){
+    double[][] X4 = theTensors.X4;
+    int[][][][] iX4 = CalibrationTensors.iX4;
+    // R[t][j2][b] = \sum_{s} \sum_{j1,k} M[s][j1][k] X4[t+s]_{j2 b j1 k}
+    for(int t=0; t<=2*this.N; t++){
+      for(int j2=0; j2<4; j2++){
+        for(int b=j2; b<4; b++){
+          double sum = 0.0;
+          for(int s=0; s<=2*this.N; s++){
+            for(int j1=0; j1<4; j1++){
+              for(int k=0; k<4; k++){
+                sum += this.M[s][j1][k]*X4[t+s][ iX4[j2][b][j1][k] ];
+              }
+            }
+          }
+          this.R[t][j2][b] = sum;
+          this.R[t][b][j2] = sum;
+        }
+      }
+    }
+  }
+  
+  // gets the cost \sum_m w_m ( y_m^2 - f_m )^2 / W = E[y^4] - 2*\sum M*Y2 + \sum M*R with the measurements of theTensors (M and R must be contracted first)
+  private double get_cost( CalibrationTensors theTensors ){
+    double[][] Y2 = theTensors.Y2;
+    int[][] iY2 = CalibrationTensors.iY2;
+    double F = theTensors.Y4;
+    for(int s=0; s<=2*this.N; s++){
+      for(int j=0; j<4; j++){
+        for(int k=0; k<4; k++){
+          F += this.M[s][j][k]*( this.R[s][j][k] - 2.0*Y2[s][ iY2[j][k] ] );
+        }
+      }
+    }
+    return F;
+  }
+  
+  // computes the matrix J^T*W*( y^2 - f ) (the tensors must be contracted first)
+  private void compute_JTWdy(){
+    double[][] Y2 = this.tensors.Y2;
+    int[][] iY2 = CalibrationTensors.iY2;
+    double[] JTWdy = this.JTWdy;
+    for(int iJ=0; iJ<9*(this.N+1); iJ++){
+      int g = iJ/9;
+      int a = A_INDEX[iJ%9];
+      int b = B_INDEX[iJ%9];
+      double sum = 0.0;
+      for(int n2=0; n2<=this.N; n2++){
+        int nY = n2+g;
+        for(int j2=0; j2<4; j2++){
+          sum += this.A[n2][a][j2]*( Y2[nY][ iY2[j2][b] ] - this.R[nY][j2][b] );
+        }
+      }
+      JTWdy[iJ] = 2.0*sum;
+    }
+  }  // compute_JTWdy()
+  
+  // computes the matrix J^T*W*J (the tensors must be contracted first), stored by rows with 9*(N+1) columns. It is symmetric, so only its upper triangle is computed
+  private void compute_JTWJ(){
+    double[] JTWJ = this.JTWJ;
+    int nz = 9*(this.N+1);
+    for(int iJ1=0; iJ1<nz; iJ1++){
+      int g1 = iJ1/9;
+      int a1 = A_INDEX[iJ1%9];
+      int b1 = B_INDEX[iJ1%9];
+      for(int iJ2=iJ1; iJ2<nz; iJ2++){
+        int g2 = iJ2/9;
+        double JTWJ12 = 4.0*this.Q[g1+g2][a1][b1][ A_INDEX[iJ2%9] ][ B_INDEX[iJ2%9] ];
+        JTWJ[iJ1*nz+iJ2] = JTWJ12;
+        JTWJ[iJ2*nz+iJ1] = JTWJ12;
+      }
+    }
+  }  // end compute_JTWJ()
+  
+  
+  // Method: Cholesky
+  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' ) in place
+  // inputs:
+  //  S: nxn positive definite matrix to be decomposed (stored by rows; only its lower triangle is used)
+  // outputs:
+  //  S: the lower triangular matrix L is overwritten in the lower triangle of S (the upper triangle is not modified)
+  private void Cholesky( double[] S , int n ){
+    // for each column
+    for(int j=0; j<n; j++){
+      int jn = j*n;
+      // we first compute the diagonal term
+      double sum = 0.0;
+      for(int k=0; k<j; k++) sum += S[jn+k]*S[jn+k];
+      S[jn+j] = Math.sqrt( S[jn+j] - sum );
+      // and then the terms below the diagonal (the rows of L are contiguous, so the sums go through contiguous memory)
+      for(int i=j+1; i<n; i++){
+        int in = i*n;
+        sum = 0.0;
+        for(int k=0; k<j; k++) sum += S[in+k]*S[jn+k];
+        S[in+j] = ( S[in+j] - sum )/S[jn+j];
+      }
+    }//end j
+    
+    return;
+  }
+  
+  
+  // Method: solve
+  // solves the system of linear equations  K*S = M  for K
+  // inputs:
+  //  S: nxn positive definite matrix (stored by rows; only its lower triangle is used, and it is overwritten with its Cholesky decomposition)
+  //  M: 1xn matrix stored by rows
+  // outputs:
+  //  M: K (1xn) is stored in the M memory space
+  private void solve( double[] S , double[] M , int n ){
+    // we first compute the Cholesky decomposition for transform the system from  K*S = M  into K*L*L' = M
+    this.Cholesky( S , n );
+    
+    // first we solve (y*L' = M)
+    for(int j=0; j<n; j++){
+      int jn = j*n;
+      double sum = M[j];
+      for(int k=0; k<j; k++){
+        sum -= M[k]*S[jn+k];
+      }
+      M[j] = sum/S[jn+j];
+    }
+    // now we solve (Ki*L = y)
+    for(int j=n-1; j>-1; j--){
+      double sum = M[j];
+      for(int k=j+1; k<n; k++){
+        sum -= M[k]*S[k*n+j];
+      }
+      M[j] = sum/S[j*n+j];
+    }
+    
+    return;
+  }
+  
+}
\ No newline at end of file
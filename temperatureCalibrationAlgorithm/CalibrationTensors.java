@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.*;
+
+
+// class that holds the tensors built with the measurements (w,x,T,y) used by TriaxialCalibrator.
+// The tensors are weighted means, so two sets of tensors built with different measurements can be merged using their sums of weights
+class CalibrationTensors {
+  
+  // PARAMETERS
+  // index maps of the symmetric tensors (only their unique elements are stored)
+  static final int[][][][] iX4 = new int[4][4][4][4];  // position in X4[n] of the element (i,j,k,l)
+  static final int[][] iY2 = new int[4][4];  // position in Y2[n] of the element (i,j)
+  static final int[][] pX4 = new int[35][];  // indexes (i,j,k,l) of each element stored in X4[n]
+  static final int[][] pY2 = new int[10][];  // indexes (i,j) of each element stored in Y2[n]
+  static final int[] qX4ij = new int[35];  // position in Y2[n] of the pair (i,j) of each element (i,j,k,l) stored in X4[n]
+  static final int[] qX4kl = new int[35];  // position in Y2[n] of the pair (k,l) of each element (i,j,k,l) stored in X4[n]
+  static {
+    // second-order tensor: 10 unique elements (i<=j)
+    int p = 0;
+    for(int i=0; i<4; i++){
+      for(int j=i; j<4; j++){
+        pY2[p] = new int[]{ i , j };
+        iY2[i][j] = p;
+        iY2[j][i] = p;
+        p++;
+      }
+    }
+    // fourth-order tensor: 35 unique elements (i<=j<=k<=l)
+    int[][][][] iSorted = new int[4][4][4][4];
+    p = 0;
+    for(int i=0; i<4; i++){
+      for(int j=i; j<4; j++){
+        for(int k=j; k<4; k++){
+          for(int l=k; l<4; l++){
+            pX4[p] = new int[]{ i , j , k , l };
+            iSorted[i][j][k][l] = p;
+            p++;
+          }
+        }
+      }
+    }
+    for(p=0; p<pX4.length; p++){
+      qX4ij[p] = iY2[ pX4[p][0] ][ pX4[p][1] ];
+      qX4kl[p] = iY2[ pX4[p][2] ][ pX4[p][3] ];
+    }
+    // every permutation of (i,j,k,l) points to the same element
+    int[] s = new int[4];
+    for(int i=0; i<4; i++){
+      for(int j=0; j<4; j++){
+        for(int k=0; k<4; k++){
+          for(int l=0; l<4; l++){
+            s[0] = i;   s[1] = j;   s[2] = k;   s[3] = l;
+            java.util.Arrays.sort( s );
+            iX4[i][j][k][l] = iSorted[ s[0] ][ s[1] ][ s[2] ][ s[3] ];
+          }
+        }
+      }
+    }
+  }
+  
+  // VARIABLES
+  private int maxN21;  // 2*N+1
+  private int maxN41;  // 4*N+1
+  // sum of weights
+  double W;
+  // tensors built with measurements
+  double Y4;  // \sum_m w_m y_m^4 / W
+  double[][] X4;  // \sum_m w_m x_{m i} x_{m j} x_{m k} x_{m l} T_m^n / W  (Nx35)
+  double[][] Y2;  // \sum_m w_m x_{m i} x_{m j} y_m^2 T_m^n / W  (Nx10)
+  // auxiliary tensors used to build the previous ones
+  private double[] x1;
+  private double[] x2;
+  private double[] x4;
+  private double[] y2;
+  private double[] Tn;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public CalibrationTensors( int maxN ) {
+    this.maxN21 = 2*maxN+1;
+    this.maxN41 = 4*maxN+1;
+    this.X4 = new double[this.maxN41][pX4.length];
+    this.Y2 = new double[this.maxN21][pY2.length];
+    this.x1 = new double[4];
+    this.x1[3] = 1.0;
+    this.x2 = new double[pY2.length];
+    this.x4 = new double[pX4.length];
+    this.y2 = new double[pY2.length];
+    this.Tn = new double[this.maxN41];
+    this.reset();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // resets the tensors
+  public void reset() {
+    this.W = 0.0;
+    this.Y4 = 0.0;
+    for(int n=0; n<this.maxN21; n++){
+      for(int p=0; p<pY2.length; p++) this.Y2[n][p] = 0.0;
+    }
+    for(int n=0; n<this.maxN41; n++){
+      for(int p=0; p<pX4.length; p++) this.X4[n][p] = 0.0;
+    }
+  }
+  
+  // updates the tensors with a data combination
+  public void include_measurement( double w , double x1 , double x2 , double x3 , double T , double y ) {
+    // only if w is positive
+    if( w < 0.0 ){
+      System.out.println( "[CalibrationTensors] include_measurement: w cannot be negative." );
+      return;
+    }
+    this.x1[0] = x1;
+    this.x1[1] = x2;
+    this.x1[2] = x3;
+    // we define the auxiliary factor for this measurement
+    double alpha = w/( this.W + w );
+    // and we add the contribution to the sum of weights
+    this.W += w;
+    // we define the square of the module
+    double y0 = y*y;
+    // we build the products of this measurement (only the unique elements); the fourth-order ones are products of two second-order ones
+    for(int p=0; p<pY2.length; p++){
+      this.x2[p] = this.x1[ pY2[p][0] ]*this.x1[ pY2[p][1] ];
+      this.y2[p] = y0*this.x2[p];
+    }
+    for(int p=0; p<pX4.length; p++) this.x4[p] = this.x2[ qX4ij[p] ]*this.x2[ qX4kl[p] ];
+    this.Tn[0] = 1.0;
+    for(int n=1; n<this.maxN41; n++) this.Tn[n] = this.Tn[n-1]*T;
+    // now we add the contribution of this measurement to the tensors
+    // the elements are the inner loops, so each one goes through contiguous arrays, and the JIT compiler can vectorize it
+    double beta = 1.0 - alpha;
+    // zeroth-order tensors
+    this.Y4 = beta*this.Y4 + alpha*y0*y0;
+    // second-order tensor
+    for(int n=0; n<this.maxN21; n++) this.update( this.Y2[n] , beta , alpha*this.Tn[n] , this.y2 );
+    // fourth-order tensor
+    for(int n=0; n<this.maxN41; n++) this.update( this.X4[n] , beta , alpha*this.Tn[n] , this.x4 );
+  }  // end include_measurement( double w , double x1 , double x2 , double x3 , double T , double y )
+  
+  // adds the measurements of other tensors (built with the same maximum polynomial order) to these ones
+  public void merge( CalibrationTensors other ) {
+    if( other.W == 0.0 ) return;
+    // we define the auxiliary factor for the other tensors
+    double alpha = other.W/( this.W + other.W );
+    this.W += other.W;
+    this.Y4 = (1.0-alpha)*this.Y4 + alpha*other.Y4;
+    for(int n=0; n<this.maxN21; n++) this.update( this.Y2[n] , 1.0-alpha , alpha , other.Y2[n] );
+    for(int n=0; n<this.maxN41; n++) this.update( this.X4[n] , 1.0-alpha , alpha , other.X4[n] );
+  }
+  
+  // adds the measurements of other tensors, built with maximum polynomial order 0 with measurements taken at the same temperature T, to these ones
+  public void merge_atTemperature( CalibrationTensors other , double T ) {
+    if( other.W == 0.0 ) return;
+    // we define the auxiliary factor for the other tensors
+    double alpha = other.W/( this.W + other.W );
+    this.W += other.W;
+    double beta = 1.0 - alpha;
+    this.Y4 = beta*this.Y4 + alpha*other.Y4;
+    // each order of these tensors gets the zeroth-order tensors of the other ones times T^n
+    this.Tn[0] = 1.0;
+    for(int n=1; n<this.maxN41; n++) this.Tn[n] = this.Tn[n-1]*T;
+    for(int n=0; n<this.maxN21; n++) this.update( this.Y2[n] , beta , alpha*this.Tn[n] , other.Y2[0] );
+    for(int n=0; n<this.maxN41; n++) this.update( this.X4[n] , beta , alpha*this.Tn[n] , other.X4[0] );
+  }
+  
+  // removes from these tensors the measurements of other tensors (that must be included in these ones)
+  public void subtract( CalibrationTensors other ) {
+    if( other.W == 0.0 ) return;
+    if( other.W >= this.W ){
+      this.reset();
+      return;
+    }
+    // we define the auxiliary factor for the other tensors
+    double alpha = other.W/( this.W - other.W );
+    this.W -= other.W;
+    this.Y4 = (1.0+alpha)*this.Y4 - alpha*other.Y4;
+    for(int n=0; n<this.maxN21; n++) this.update( this.Y2[n] , 1.0+alpha , -alpha , other.Y2[n] );
+    for(int n=0; n<this.maxN41; n++) this.update( this.X4[n] , 1.0+alpha , -alpha , other.X4[n] );
+  }
+  
+  // changes the variable of the polynomials from T to T' = a*T + b, so these tensors can be merged with tensors built with T'
+  public void rebase( double a , double b ) {
+    this.rebase( this.Y2 , a , b );
+    this.rebase( this.X4 , a , b );
+  }
+  
+  // writes the tensors in out
+  public void save( DataOutputStream out ) throws IOException {
+    out.writeDouble( this.W );
+    out.writeDouble( this.Y4 );
+    for(int n=0; n<this.maxN21; n++){
+      for(int p=0; p<pY2.length; p++) out.writeDouble( this.Y2[n][p] );
+    }
+    for(int n=0; n<this.maxN41; n++){
+      for(int p=0; p<pX4.length; p++) out.writeDouble( this.X4[n][p] );
+    }
+  }
+  
+  // reads the tensors from in (they must have been written by tensors with the same maximum polynomial order)
+  public void load( DataInputStream in ) throws IOException {
+    this.W = in.readDouble();
+    this.Y4 = in.readDouble();
+    for(int n=0; n<this.maxN21; n++){
+      for(int p=0; p<pY2.length; p++) this.Y2[n][p] = in.readDouble();
+    }
+    for(int n=0; n<this.maxN41; n++){
+      for(int p=0; p<pX4.length; p++) this.X4[n][p] = in.readDouble();
+    }
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // theTensor = beta*theTensor + gamma*theProducts
+  private void update( double[] theTensor , double beta , double gamma , double[] theProducts ) {
+    for(int p=0; p<theTensor.length; p++) theTensor[p] = beta*theTensor[p] + gamma*theProducts[p];
+  }
+  
+  // replaces each element of the tensor, (T^n)_p, by \sum_k C(n,k) a^k b^(n-k) (T^k)_p , which is ( (a*T+b)^n )_p
+  private void rebase( double[][] theTensor , double a , double b ) {
+    int maxN = theTensor.length;
+    double[] aPow = new double[maxN];
+    double[] bPow = new double[maxN];
+    aPow[0] = 1.0;
+    bPow[0] = 1.0;
+    for(int k=1; k<maxN; k++){
+      aPow[k] = aPow[k-1]*a;
+      bPow[k] = bPow[k-1]*b;
+    }
+    // the highest orders go first, so the lower ones are still available
+    for(int n=maxN-1; n>0; n--){
+      for(int p=0; p<theTensor[n].length; p++){
+        double sum = 0.0;
+        double binomial = 1.0;
+        for(int k=0; k<=n; k++){
+          sum += binomial*aPow[k]*bPow[n-k]*theTensor[k][p];
+          binomial = binomial*( n - k )/( k + 1 );
+        }
+        theTensor[n][p] = sum;
+      }
+    }
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+
+// class that reads the binary columnar data files (.bdat) written by TriaxialCalibrator. The file begins with a header (magic number,
+// number of columns, and number of rows), followed by the values of each column stored one after the other as doubles.
+// Each column is memory-mapped, so reading the file does not copy or parse the values
+class ColumnarDataFile {
+  
+  // PARAMETERS
+  private static final int MAGIC = 0x54434244;  // "TCBD"
+  private static final int HEADER_SIZE = 16;  // magic (int), number of columns (int), and number of rows (long)
+  
+  // VARIABLES
+  private FileInputStream fis;
+  private DoubleBuffer[] columns;
+  private int rows;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public ColumnarDataFile() {
+    this.columns = new DoubleBuffer[0];
+    this.rows = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // writes in path the first theRows values of each column
+  public static void write( String path , double[][] theColumns , int theRows ) throws IOException {
+    DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( path ) , 1 << 16 ) );
+    try{
+      out.writeInt( MAGIC );
+      out.writeInt( theColumns.length );
+      out.writeLong( theRows );
+      for(int c=0; c<theColumns.length; c++){
+        for(int r=0; r<theRows; r++) out.writeDouble( theColumns[c][r] );
+      }
+    }finally{
+      out.close();
+    }
+  }
+  
+  // converts the binary file located in binaryPath to a text file (the values of each row separated by spaces) located in textPath
+  public static boolean convert_toText( String binaryPath , String textPath ) {
+    ColumnarDataFile theFile = new ColumnarDataFile();
+    if( !theFile.open( binaryPath ) ) return false;
+    try{
+      PrintWriter out = new PrintWriter( new BufferedWriter( new FileWriter( textPath ) , 1 << 16 ) );
+      StringBuilder line = new StringBuilder();
+      for(int r=0; r<theFile.get_numberOfRows(); r++){
+        line.setLength( 0 );
+        for(int c=0; c<theFile.get_numberOfColumns(); c++){
+          if( c > 0 ) line.append( ' ' );
+          line.append( theFile.get( c , r ) );
+        }
+        out.println( line );
+      }
+      out.flush();
+      out.close();
+      return true;
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+      return false;
+    }finally{
+      theFile.close();
+    }
+  }
+  
+  // opens the file located in path, mapping each of its columns. Returns false if it can not be opened
+  public boolean open( String path ) {
+    try{
+      this.fis = new FileInputStream( path );
+      FileChannel channel = this.fis.getChannel();
+      ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+      while( header.hasRemaining()  &&  channel.read( header ) >= 0 );
+      header.flip();
+      if( header.remaining() < HEADER_SIZE  ||  header.getInt() != MAGIC ) throw new IOException( path + " is not a binary data file." );
+      int numberOfColumns = header.getInt();
+      long numberOfRows = header.getLong();
+      if( numberOfColumns < 0  ||  numberOfRows < 0  ||  numberOfRows > Integer.MAX_VALUE/8  ||
+          HEADER_SIZE + 8*numberOfRows*numberOfColumns > channel.size() ) throw new IOException( path + " is truncated." );
+      this.rows = (int)numberOfRows;
+      this.columns = new DoubleBuffer[numberOfColumns];
+      for(int c=0; c<numberOfColumns; c++){
+        this.columns[c] = channel.map( FileChannel.MapMode.READ_ONLY , HEADER_SIZE + 8L*c*this.rows , 8L*this.rows ).asDoubleBuffer();
+      }
+      return true;
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+      this.close();
+      return false;
+    }
+  }
+  
+  public int get_numberOfRows() {
+    return this.rows;
+  }
+  
+  public int get_numberOfColumns() {
+    return this.columns.length;
+  }
+  
+  // returns the value of the column c in the row r
+  public double get( int c , int r ) {
+    return this.columns[c].get( r );
+  }
+  
+  // closes the file (the mappings are released when they are no longer referenced)
+  public void close() {
+    this.columns = new DoubleBuffer[0];
+    this.rows = 0;
+    try{
+      if( this.fis != null ) this.fis.close();
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+    }
+    this.fis = null;
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+
+
+// class that reads the lines of a data file (numbers separated by spaces) directly from the bytes of the memory-mapped file.
+// Each line is parsed into an array owned by the caller, so reading a file does not create objects for each line
+class DataFileReader {
+  
+  // PARAMETERS
+  private static final int MAPPING_SIZE = 1 << 26;  // bytes of the file mapped at the same time (64 MiB)
+  private static final int MAX_FAST_DIGITS = 15;  // numbers with more significant digits are parsed with Double.parseDouble
+  // powers of ten that are exactly representable as double
+  private static final double[] POWERS_OF_TEN = { 1.0e0 , 1.0e1 , 1.0e2 , 1.0e3 , 1.0e4 , 1.0e5 , 1.0e6 , 1.0e7 , 1.0e8 , 1.0e9 , 1.0e10 , 1.0e11 ,
+                                                  1.0e12 , 1.0e13 , 1.0e14 , 1.0e15 , 1.0e16 , 1.0e17 , 1.0e18 , 1.0e19 , 1.0e20 , 1.0e21 , 1.0e22 };
+  
+  // VARIABLES
+  private FileInputStream fis;
+  private FileChannel channel;
+  private long fileSize;
+  // piece of the file currently mapped, and its position in the file
+  private MappedByteBuffer buffer;
+  private long bufferPosition;
+  private int bufferSize;
+  // position of the next byte to read in the buffer
+  private int p;
+  // characters of the numbers that can not be parsed by the fast path
+  private char[] token;
+  // SHA-256 digest of the bytes of the file (if it is computed), and number of bytes of the file included in it
+  private MessageDigest digest;
+  private long digestedSize;
+  // digest of the last file, once it is closed (or null)
+  private byte[] fileDigest;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public DataFileReader() {
+    this.token = new char[64];
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // opens the file located in path. Returns false if it can not be opened
+  public boolean open( String path ) {
+    return this.open( path , false );
+  }
+  
+  // opens the file located in path, and if computeDigest, computes the SHA-256 digest of its bytes as they are mapped, so the file is not read
+  // again to get it (see get_digest). Returns false if it can not be opened
+  public boolean open( String path , boolean computeDigest ) {
+    this.digest = null;
+    this.digestedSize = 0;
+    this.fileDigest = null;
+    try{
+      if( computeDigest ) this.digest = MessageDigest.getInstance( "SHA-256" );
+      this.fis = new FileInputStream( path );
+      this.channel = this.fis.getChannel();
+      this.fileSize = this.channel.size();
+      this.map( 0 );
+      return true;
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+      this.digest = null;
+      this.close();
+      return false;
+    }
+  }
+  
+  // reads the next line of the file, and stores its values in theValues. Only the first theValues.length values are parsed (the rest are skipped).
+  // Returns the number of values in the line, or -1 at the end of the file or if one of the values can not be interpreted as a number
+  public int read_values( double[] theValues ) {
+    if( this.buffer == null ) return -1;
+    while( true ){
+      int lineStart = this.p;
+      int count = this.parse_line( theValues );
+      if( count != -2 ) return count;
+      // the line continues after the mapped piece of the file, so we map the file again from the beginning of the line
+      if( lineStart == 0 ) return -1;  // the line does not fit in the mapping
+      try{
+        this.map( this.bufferPosition + lineStart );
+      }catch( Exception e ){
+        System.out.println( "Error: " + e.getMessage() );
+        return -1;
+      }
+    }
+  }
+  
+  // returns the SHA-256 digest of the last file opened with computeDigest, once it is closed. It is null if it was not computed, or if the reading
+  // stopped before the last piece of the file was mapped
+  public byte[] get_digest() {
+    return this.fileDigest;
+  }
+  
+  // closes the file
+  public void close() {
+    this.buffer = null;
+    if(  this.digest != null  &&  this.digestedSize == this.fileSize  ) this.fileDigest = this.digest.digest();
+    this.digest = null;
+    try{
+      if( this.channel != null ) this.channel.close();
+      if( this.fis != null ) this.fis.close();
+    }catch( Exception e ){
+      System.out.println( "Error: " + e.getMessage() );
+    }
+    this.channel = null;
+    this.fis = null;
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // maps the piece of the file that begins at thePosition
+  private void map( long thePosition ) throws IOException {
+    this.bufferPosition = thePosition;
+    this.bufferSize = (int)Math.min( MAPPING_SIZE , this.fileSize - thePosition );
+    this.buffer = this.channel.map( FileChannel.MapMode.READ_ONLY , thePosition , this.bufferSize );
+    this.p = 0;
+    // the digest gets the bytes of the piece that it has not got yet (a piece begins before the end of the previous one if a line was cut)
+    if(  this.digest != null  &&  thePosition + this.bufferSize > this.digestedSize  ){
+      ByteBuffer bytes = this.buffer.duplicate();
+      bytes.position( (int)( this.digestedSize - thePosition ) );
+      this.digest.update( bytes );
+      this.digestedSize = thePosition + this.bufferSize;
+    }
+  }
+  
+  // returns true if the mapped piece of the file is the last one
+  private boolean is_lastPiece() {
+    return ( this.bufferPosition + this.bufferSize >= this.fileSize );
+  }
+  
+  // parses the line that begins at p. Returns the number of values, -1 as described in read_values, or -2 if the line is cut by the end of the mapped piece
+  private int parse_line( double[] theValues ) {
+    if( this.p == this.bufferSize  &&  this.is_lastPiece() ) return -1;
+    int count = 0;
+    while( true ){
+      // we skip the separators
+      byte b = 0;
+      while( this.p < this.bufferSize ){
+        b = this.buffer.get( this.p );
+        if( b != ' '  &&  b != '\t'  &&  b != '\r' ) break;
+        this.p++;
+      }
+      if( this.p == this.bufferSize ){
+        return ( this.is_lastPiece() ) ? count : -2;
+      }
+      if( b == '\n' ){
+        this.p++;
+        return count;
+      }
+      // and we read the next value
+      int tokenStart = this.p;
+      while( this.p < this.bufferSize ){
+        b = this.buffer.get( this.p );
+        if( b == ' '  ||  b == '\t'  ||  b == '\r'  ||  b == '\n' ) break;
+        this.p++;
+      }
+      if( this.p == this.bufferSize  &&  !this.is_lastPiece() ) return -2;
+      if( count < theValues.length ){
+        double value = this.parse_double( tokenStart , this.p );
+        if( Double.isNaN( value )  &&  !this.is_NaN( tokenStart , this.p ) ) return -1;
+        theValues[count] = value;
+      }
+      count++;
+    }
+  }
+  
+  // parses the number written in the bytes [start,end) of the buffer. Returns NaN if it can not be interpreted as a number.
+  // Numbers with up to 15 significant digits and exponents up to 22 are computed exactly with one multiplication or division (it is the case of the data files);
+  // the rest are handed to Double.parseDouble
+  private double parse_double( int start , int end ) {
+    int i = start;
+    boolean negative = false;
+    byte b = this.buffer.get( i );
+    if( b == '-'  ||  b == '+' ){
+      negative = ( b == '-' );
+      i++;
+    }
+    long mantissa = 0;
+    int digits = 0;  // significant digits in the mantissa
+    int exponent = 0;
+    boolean anyDigit = false;
+    boolean point = false;
+    for(; i<end; i++){
+      b = this.buffer.get( i );
+      if( '0' <= b  &&  b <= '9' ){
+        anyDigit = true;
+        if( mantissa != 0  ||  b != '0' ) digits++;
+        if( digits > MAX_FAST_DIGITS ) return this.parse_slow( start , end );
+        mantissa = 10*mantissa + ( b - '0' );
+        if( point ) exponent--;
+      }else if( b == '.'  &&  !point ){
+        point = true;
+      }else{
+        break;
+      }
+    }
+    if( !anyDigit ) return this.parse_slow( start , end );
+    if( i < end ){
+      if( b != 'e'  &&  b != 'E' ) return this.parse_slow( start , end );
+      i++;
+      boolean negativeExponent = false;
+      if( i < end  &&  ( this.buffer.get( i ) == '-'  ||  this.buffer.get( i ) == '+' ) ){
+        negativeExponent = ( this.buffer.get( i ) == '-' );
+        i++;
+      }
+      if( i == end ) return this.parse_slow( start , end );
+      int e = 0;
+      for(; i<end; i++){
+        b = this.buffer.get( i );
+        if( b < '0'  ||  '9' < b  ||  e > 100000 ) return this.parse_slow( start , end );
+        e = 10*e + ( b - '0' );
+      }
+      exponent += ( negativeExponent ) ? -e : e;
+    }
+    if( exponent < -22  ||  22 < exponent ) return this.parse_slow( start , end );
+    double value = ( exponent < 0 ) ? mantissa/POWERS_OF_TEN[-exponent] : mantissa*POWERS_OF_TEN[exponent];
+    return ( negative ) ? -value : value;
+  }
+  
+  // parses the number written in the bytes [start,end) of the buffer using Double.parseDouble
+  private double parse_slow( int start , int end ) {
+    if( end - start > this.token.length ) this.token = new char[2*( end - start )];
+    for(int i=start; i<end; i++) this.token[i-start] = (char)this.buffer.get( i );
+    try{
+      return Double.parseDouble( new String( this.token , 0 , end - start ) );
+    }catch( NumberFormatException e ){
+      return Double.NaN;
+    }
+  }
+  
+  // returns true if the bytes [start,end) of the buffer are a NaN written as a number
+  private boolean is_NaN( int start , int end ) {
+    int i = start;
+    byte b = this.buffer.get( i );
+    if( b == '-'  ||  b == '+' ) i++;
+    return (  end - i == 3  &&  this.buffer.get( i ) == 'N'  &&  this.buffer.get( i+1 ) == 'a'  &&  this.buffer.get( i+2 ) == 'N'  );
+  }
+  
+}
\ No newline at end of file
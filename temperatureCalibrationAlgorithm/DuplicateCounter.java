@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// class that counts the repetitions of the measurements (x,y,z,T,|y|) of each group, so identical measurements can be included in the tensors
+// only once, with their count as weight. It is a hash table with open addressing (linear probing) over primitive arrays
+class DuplicateCounter {
+  
+  // VARIABLES
+  // number of different measurements
+  private int size;
+  // different measurements, and their number of repetitions
+  private double[] x;
+  private double[] y;
+  private double[] z;
+  private double[] T;
+  private double[] module;
+  private int[] group;
+  private int[] count;
+  // position+1 in the previous arrays of the measurement stored in each slot of the table (0 if the slot is empty)
+  private int[] table;
+  private int mask;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  // creates a counter for up to maxSize different measurements
+  public DuplicateCounter( int maxSize ) {
+    maxSize = Math.max( maxSize , 1 );
+    this.x = new double[maxSize];
+    this.y = new double[maxSize];
+    this.z = new double[maxSize];
+    this.T = new double[maxSize];
+    this.module = new double[maxSize];
+    this.group = new int[maxSize];
+    this.count = new int[maxSize];
+    // the table is kept at most half full
+    int capacity = Integer.highestOneBit( 2*maxSize - 1 ) << 1;
+    this.table = new int[capacity];
+    this.mask = capacity - 1;
+    this.size = 0;
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // counts one more repetition of the measurement (theX,theY,theZ,theT,theModule) in theGroup
+  public void add( double theX , double theY , double theZ , double theT , double theModule , int theGroup ) {
+    long bx = Double.doubleToLongBits( theX );
+    long by = Double.doubleToLongBits( theY );
+    long bz = Double.doubleToLongBits( theZ );
+    long bT = Double.doubleToLongBits( theT );
+    long bm = Double.doubleToLongBits( theModule );
+    long h = theGroup;
+    h = 31*h + bx;
+    h = 31*h + by;
+    h = 31*h + bz;
+    h = 31*h + bT;
+    h = 31*h + bm;
+    // final mix of MurmurHash3, so the low bits depend on all the bits of the measurement
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    int slot = (int)h & this.mask;
+    while( this.table[slot] != 0 ){
+      int i = this.table[slot] - 1;
+      if(  this.group[i] == theGroup  &&  Double.doubleToLongBits( this.x[i] ) == bx  &&  Double.doubleToLongBits( this.y[i] ) == by  &&
+           Double.doubleToLongBits( this.z[i] ) == bz  &&  Double.doubleToLongBits( this.T[i] ) == bT  &&  Double.doubleToLongBits( this.module[i] ) == bm  ){
+        this.count[i]++;
+        return;
+      }
+      slot = ( slot + 1 ) & this.mask;
+    }
+    // it is a new measurement
+    int i = this.size;
+    this.x[i] = theX;
+    this.y[i] = theY;
+    this.z[i] = theZ;
+    this.T[i] = theT;
+    this.module[i] = theModule;
+    this.group[i] = theGroup;
+    this.count[i] = 1;
+    this.table[slot] = i + 1;
+    this.size++;
+  }
+  
+  // returns the number of different measurements
+  public int size() {
+    return this.size;
+  }
+  
+  public double get_x( int i ) {
+    return this.x[i];
+  }
+  
+  public double get_y( int i ) {
+    return this.y[i];
+  }
+  
+  public double get_z( int i ) {
+    return this.z[i];
+  }
+  
+  public double get_T( int i ) {
+    return this.T[i];
+  }
+  
+  public double get_module( int i ) {
+    return this.module[i];
+  }
+  
+  public int get_group( int i ) {
+    return this.group[i];
+  }
+  
+  // returns the number of repetitions of the measurement i
+  public int get_count( int i ) {
+    return this.count[i];
+  }
+  
+}
\ No newline at end of file
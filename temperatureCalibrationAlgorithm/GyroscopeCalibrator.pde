@@ -41,7 +41,7 @@ public class GyroscopeCalibrator extends TriaxialCalibrator {
   }
   
   // computes the error using the default calibration (the one presented in the datasheet)
-  protected double[] compute_error0( String filePath ) {
+  protected double[] compute_error0() {
     double s = 0.0;
     switch( this.sID ){
       case 11:
@@ -68,7 +68,7 @@ public class GyroscopeCalibrator extends TriaxialCalibrator {
       default:
         break;
     }
-    return this.compute_error0( filePath , s );
+    return this.compute_error0( s );
   }
   
 }
\ No newline at end of file
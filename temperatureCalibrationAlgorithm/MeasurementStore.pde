@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+// class that keeps in memory the measurements (x,T,y) selected for the calibration of a triaxial sensor, so that the calibrator
+// can go through them as many times as it needs without reading the data file again. Each column is stored in its own array
+public class MeasurementStore {
+  
+  // PARAMETERS
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;  // maximum length of a Java array
+  
+  // VARIABLES
+  // number of measurements stored
+  private int size;
+  // columns of the store
+  private double[] x;  // x measurements
+  private double[] y;  // y measurements
+  private double[] z;  // z measurements
+  private double[] T;  // temperature measurements
+  private double[] m;  // known module of the measured vector
+  private double[] id;  // measurement number (values[0] in the data file)
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  public MeasurementStore() {
+    this.reset();
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  // removes all the measurements, and releases the memory used by them
+  public void reset() {
+    this.size = 0;
+    this.x = new double[INITIAL_CAPACITY];
+    this.y = new double[INITIAL_CAPACITY];
+    this.z = new double[INITIAL_CAPACITY];
+    this.T = new double[INITIAL_CAPACITY];
+    this.m = new double[INITIAL_CAPACITY];
+    this.id = new double[INITIAL_CAPACITY];
+  }
+  
+  // adds a measurement at the end of the store (throws an IllegalStateException if the store can not grow)
+  public void add( double theX , double theY , double theZ , double theT , double theModule , double theID ) {
+    if( this.size == this.x.length ) this.grow();
+    this.x[this.size] = theX;
+    this.y[this.size] = theY;
+    this.z[this.size] = theZ;
+    this.T[this.size] = theT;
+    this.m[this.size] = theModule;
+    this.id[this.size] = theID;
+    this.size++;
+  }
+  
+  // returns the number of measurements stored
+  public int size() {
+    return this.size;
+  }
+  
+  public double get_x( int k ) {
+    return this.x[k];
+  }
+  
+  public double get_y( int k ) {
+    return this.y[k];
+  }
+  
+  public double get_z( int k ) {
+    return this.z[k];
+  }
+  
+  public double get_T( int k ) {
+    return this.T[k];
+  }
+  
+  public double get_module( int k ) {
+    return this.m[k];
+  }
+  
+  public double get_ID( int k ) {
+    return this.id[k];
+  }
+  
+  
+  // PRIVATE METHODS
+  
+  // doubles the capacity of each column (up to MAX_CAPACITY). The new columns are assigned only when all of them have been allocated,
+  // so the store is still valid if there is not enough memory
+  private void grow() {
+    if( this.x.length >= MAX_CAPACITY ) throw new IllegalStateException( "The store is full: no more than " + MAX_CAPACITY + " measurements can be kept in memory." );
+    int capacity = (int)Math.min( 2L*this.x.length , (long)MAX_CAPACITY );
+    try{
+      double[] newX = java.util.Arrays.copyOf( this.x , capacity );
+      double[] newY = java.util.Arrays.copyOf( this.y , capacity );
+      double[] newZ = java.util.Arrays.copyOf( this.z , capacity );
+      double[] newT = java.util.Arrays.copyOf( this.T , capacity );
+      double[] newM = java.util.Arrays.copyOf( this.m , capacity );
+      double[] newID = java.util.Arrays.copyOf( this.id , capacity );
+      this.x = newX;
+      this.y = newY;
+      this.z = newZ;
+      this.T = newT;
+      this.m = newM;
+      this.id = newID;
+    }catch( OutOfMemoryError e ){
+      throw new IllegalStateException( "Not enough memory to keep more than " + this.size + " measurements (" + 48L*capacity/1048576 + " MB needed): increase the maximum heap size." );
+    }
+  }
+  
+}
\ No newline at end of file
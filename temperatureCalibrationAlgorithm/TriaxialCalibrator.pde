@@ -17,6 +17,12 @@
 
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 
 // class that implements methods to calibrate a triaxial sensor using measurements (w,x,T,y), where x is the 3-vector measured by the
 // triaxial sensor, T is the temperature at which the measurements were made, y is the known module of the vector measured externally,
@@ -24,39 +30,56 @@ import java.io.*;
 public abstract class TriaxialCalibrator {
   
   // PARAMETERS
+  // strategies to split the measurements into calibration data and validation data (by temperature)
+  public static final int EXTRAPOLATION = 0;  // the validation data is at both ends of the temperature range
+  public static final int INTERPOLATION = 1;  // the validation data is in the middle of the temperature range
+  public static final int INTERPOLATION_AND_EXTRAPOLATION = 2;  // the validation data is in the middle, and at both ends of the temperature range
   private static final int MAX_POLYNOMIAL_ORDER = 5; // >= 0
   private static final double PROPORTION_OF_CALIBRATION_DATA = 0.75;  // proportion of calibration data (the rest is used to validate the calibration)
-  private static final int MAX_CALIBRATION_ITERATIONS_WITHOUT_IMPROVEMENT = 20;  // the iterative calibration method will end if the solution does not improve after MAX_ITERATIONS_WITHOUT_IMPROVEMENT iterations
-  private static final int MAX_CALIBRATION_ITERATIONS = 1000;
+  private static final int SPLIT_STRATEGY = EXTRAPOLATION;  // default strategy to split the data
+  private static final boolean COMPARE_SPLIT_STRATEGIES = false;  // if true, the errors of each polynomial order with each split strategy are stored in the .spl file
+  private static final int NUMBER_OF_TEMPERATURE_BINS = 256;  // the tensors and the errors are kept for each temperature bin, so the ones of any split are assembled summing bins
+  private static final boolean CROSS_VALIDATION = false;  // if true, the polynomial order is selected with k-fold cross-validation instead of the validation data
+  private static final int NUMBER_OF_FOLDS = 5;  // the folds are groups of measurement numbers (measurement number mod NUMBER_OF_FOLDS)
+  private static final boolean BOOTSTRAP = false;  // if true, the confidence intervals of the calibration coefficients are computed with a block bootstrap, and stored in the .boot file
+  private static final int NUMBER_OF_BOOTSTRAP_BLOCKS = 64;  // the blocks are groups of measurement numbers (measurement number mod NUMBER_OF_BOOTSTRAP_BLOCKS)
+  private static final int NUMBER_OF_BOOTSTRAP_REPLICATES = 200;
+  private static final double BOOTSTRAP_CONFIDENCE = 0.95;  // confidence level of the (percentile) intervals
+  private static final boolean WRITE_SNAPSHOTS = true;  // if true, the tensors of each temperature bin (and of each fold, if CROSS_VALIDATION) are stored in the .sst file, so calibrate_withAll can merge them without reading the measurements
+  private static final boolean FOLD_TENSORS = CROSS_VALIDATION;  // the tensors of each fold are built
+  private static final boolean EXPORT_TEXT_DATA = false;  // if true, the calibrated data (.bdat file) is also stored as text (.dat file) to plot it
+  private static final boolean NORMALIZED_TEMPERATURE = true;  // if true, the polynomials are computed in the normalized temperature t = ( 2*T - (Tmax+Tmin) )/( Tmax - Tmin ), that lies in [-1,1]
+  private static final boolean CHEBYSHEV_BASIS = false;  // if true (and NORMALIZED_TEMPERATURE), the calibration is stored using the basis of Chebyshev polynomials of t
+  private static final boolean STREAMED_ACCUMULATION = true;  // if true, the measurements of each distinct temperature are accumulated while the data file is scanned, and the tensors of each bin are built with them (see set_bins)
+  private static final int MAX_STREAMED_TENSORS = 32768;  // if the previous accumulation needs more tensors (too many distinct temperatures), it is abandoned, and the tensors are built with the stored measurements
+  private static final long TEMPERATURE_KEY_FACTOR = 0x9E3779B97F4A7C15L;  // odd factor that mixes the bits of each temperature to get its key in the previous accumulation (the hash codes of Double, and Long, only fold the two halves of the bits, so the integer temperatures of some sensors would collide)
+  private static final long TEMPERATURE_KEY_INVERSE = 0xF1DE83E19937733DL;  // inverse of the previous factor (modulo 2^64), that gets back the temperature of a key
+  private static final boolean PARALLEL_ACCUMULATION = true;  // if true, the tensors are built in parallel with chunks of the calibration data
+  private static final int ACCUMULATION_CHUNK_SIZE = 65536;  // measurements included sequentially by each task of the parallel accumulation
+  private static final boolean DEDUPLICATE_MEASUREMENTS = false;  // if true, the identical measurements of each chunk are included in the tensors only once, with their count as weight (it only pays off with coarsely quantized sensors that repeat many readings)
+  private static final boolean CONCURRENT_ORDER_SWEEP = true;  // if true, the calibrations of all the polynomial orders are computed at the same time
+  private static final boolean WARM_START_ORDER_SWEEP = true;  // each polynomial order starts from the solution of the previous one (the solutions are computed one after the other, but the errors of each order are still computed concurrently, and the orders skipped by EARLY_STOPPING_SWEEP are never started)
+  private static final boolean WARM_START_FINAL_CALIBRATION = true;  // the final calibration takes the solution of the best polynomial order in the sweep (computed with the same tensors)
+  private static final boolean EARLY_STOPPING_SWEEP = true;  // if true, the sweep stops when the validation error has not improved in ORDER_SWEEP_PATIENCE consecutive orders (the skipped orders are stored as NaN in the .err file)
+  private static final int ORDER_SWEEP_PATIENCE = 2;  // >= 1
+  private static final boolean PROGRESSIVE_CALIBRATION = false;  // if true, a provisional calibration is computed first with a stratified sample of the measurements (see calibrate_progressive)
+  private static final double PROGRESSIVE_SAMPLE_PROPORTION = 0.01;  // proportion of the measurements of each stratum taken for the provisional calibration
+  private static final int PROGRESSIVE_SAMPLE_GROUPS = 16;  // the strata are the temperature bins and the groups of measurement numbers (measurement number mod PROGRESSIVE_SAMPLE_GROUPS)
+  private static final long PROGRESSIVE_SAMPLE_SEED = 0;  // seed of the random sampling, so the provisional calibration is reproducible
+  private static final boolean WRITE_PROFILE = true;  // if true, the time and the counters of each phase of the calibration are stored in the .prof.json file
+  private static final boolean CACHE_RESULTS = false;  // if true, the results of calibrating a data file are kept in a cache, so they are restored instead of computed again if the data file and the configuration do not change (see CalibrationCache). The results include the calibrated data, which is as large as the data file
+  private static final String CACHE_FOLDER = "calibrationCache";  // folder of the cache, inside the folder of the data files
+  private static final long CACHE_MAX_SIZE = 1L << 30;  // (bytes) the least recently used results are removed when the cache grows over this size
   
   // VARIABLES
-  // order of the polynomial used for the temperature dependence
-  private int N;
-  private int maxN21;  // 2*N+1
-  private int maxN41;  // 4*N+1
-  // sum of weights
-  private double W;
   // variables used to compute the variance in the measurements
   private double varX;
   private double varY;
   private double varZ;
   // tensors built with measurements (their size depend on N)
-  private double[][][][][] X4;  // \sum_m w_m x_{m i} x_{m j} x_{m k} x_{m l} T_m^n  (Nx4x4x4x4)
-  private double[][][] Y2;  // \sum_m w_m x_{m i} x_{m j} y_m^2 T_m^n  (Nx4x4)
-  // auxiliary tensors used to build the previous ones
-  private double[] x1;
-  private double[][] x2;
-  private double[][][] x3;
-  private double[][][][] x4;
-  private double[] y1;
-  private double[][] y2;
-  private double[] Tn;
-  // current approximation to the solution
-  private double[] zk;  // z_k = ( (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(0) , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(1) , ... , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(N) )_k  (9*Nx1)
-  // optimal approximation to the solution
-  private double[] z;  // z = ( (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(0) , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(1) , ... , (K11,K21,K22,K31,K32,K33,c1,c2,c3)^(N) )_optimal  (9*Nx1)
-  // coefficients of the polynomial matrix A: A^(n)
-  private double[][][] A;
+  private CalibrationTensors tensors;
+  // solver of the calibration finally selected
+  private CalibrationSolver solver;
   // calibration file parameters
   protected int sID;  // ID of the sensor that we want to calibrate
   protected int iID;  // index in the file for the sensor ID
@@ -69,9 +92,47 @@ public abstract class TriaxialCalibrator {
   private double Tmin;  // minimum temperature in file
   private double Tmax;  // maximum temperature in file
   private double[] intervalsT;  // temperature intervals for which the measurement will be taken for the test calibration
-  // some other useful things
-  private FileInputStream fis;
-  private BufferedReader br;
+  private int splitStrategy;  // strategy used to set the previous intervals
+  // statistics of each temperature bin
+  private CalibrationTensors[] binTensors;  // tensors built with the measurements of each bin
+  private double[][] binErrors0;  // number of measurements, sum of errors, and sum of squared errors of each bin with the default calibration
+  private boolean[] calibrationBins;  // bins inside the temperature intervals (calibration data)
+  // tensors built with the measurements of each fold of the cross-validation
+  private CalibrationTensors[] foldTensors;
+  // progressive calibration
+  private boolean provisional;  // true while the provisional calibration is computed
+  private CalibrationSolver[] initialSolvers;  // solutions of the provisional calibration, used as first approximation of each polynomial order (or null)
+  // measurements selected for the calibration, kept in memory after reading the data file once
+  private MeasurementStore data;
+  // zero-order tensors built while the data file is scanned with the measurements of each distinct temperature (one for each fold if FOLD_TENSORS, or null
+  // if the fold has no measurements), or null if they are not available (see STREAMED_ACCUMULATION)
+  private HashMap<Long,CalibrationTensors[]> temperatureTensors;  // the keys are the bits of the temperatures times TEMPERATURE_KEY_FACTOR
+  private int streamedTensors;  // number of tensors in the previous map
+  private double lastT;  // temperature of the last measurement scanned, and its tensors (consecutive measurements usually have the same temperature)
+  private CalibrationTensors[] lastTensors;
+  // variables used to compute the variance in the measurements while the data file is read
+  private double mNumber;
+  private double Ex;
+  private double Exx;
+  private double Ey;
+  private double Eyy;
+  private double Ez;
+  private double Ezz;
+  private double Ndat;
+  private double Nvar;
+  // reader of the data files, and values of the line being read
+  private DataFileReader reader;
+  private double[] values;
+  // time and counters of each phase of the calibration
+  private CalibrationProfile profile;
+  private long scannedLines;
+  private long acceptedLines;
+  // SHA-256 digest of the data file scanned (computed while it was read, if CACHE_RESULTS), or null if it is not known
+  private byte[] dataDigest;
+  // paths of the files written by the last calibration (they are the results stored in the cache)
+  private ArrayList<String> outputs;
+  // true if the last calibration was completed (or restored from the cache)
+  private boolean calibrated;
   
   
   // ABSTRACT METHODS
@@ -79,30 +140,24 @@ public abstract class TriaxialCalibrator {
   protected abstract String get_sensorType();
   protected abstract boolean measurement_condition( double[] values );  // returns true if the values are suitable for calibration
   protected abstract double get_module( double[] values );  // gets the module of the y vector
-  protected abstract double[] compute_error0( String filePath );  // computes the error using the default calibration (the one presented in the datasheet)
+  protected abstract double[] compute_error0();  // computes the error using the default calibration (the one presented in the datasheet)
   
   
   // PUBLIC CONSTRUCTORS
   
   public TriaxialCalibrator() {
-    this.maxN21 = 2*MAX_POLYNOMIAL_ORDER+1;
-    this.maxN41 = 4*MAX_POLYNOMIAL_ORDER+1;
     // calibration tensors
-    this.X4 = new double[this.maxN41][4][4][4][4];
-    this.Y2 = new double[this.maxN21][4][4];
-    // auxiliary tensors
-    this.x1 = new double[4];
-    this.x1[3] = 1.0;
-    this.x2 = new double[4][4];
-    this.x3 = new double[4][4][4];
-    this.x4 = new double[4][4][4][4];
-    this.y1 = new double[4];
-    this.y2 = new double[4][4];
-    this.Tn = new double[this.maxN41];
+    this.tensors = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
     // algorithm variables
-    this.zk = new double[9*(MAX_POLYNOMIAL_ORDER+1)];
-    this.z = new double[9*(MAX_POLYNOMIAL_ORDER+1)];
-    this.A = new double[MAX_POLYNOMIAL_ORDER+1][3][4];
+    this.solver = new CalibrationSolver( MAX_POLYNOMIAL_ORDER , this.tensors );
+    // calibration data
+    this.data = new MeasurementStore();
+    this.reader = new DataFileReader();
+    this.profile = new CalibrationProfile();
+    this.outputs = new ArrayList<String>();
+    this.calibrated = false;
+    this.splitStrategy = SPLIT_STRATEGY;
+    this.calibrationBins = new boolean[NUMBER_OF_TEMPERATURE_BINS];
     // now we reset
     this.reset_tensors();
   }
@@ -137,321 +192,1077 @@ public abstract class TriaxialCalibrator {
     this.iwm = the_iwm;
   }
   
-  // calibrates the file located in fPath (without extension), and stores the calibration, and the errors for each polynomial order
+  // sets the strategy to split the data into calibration data and validation data (EXTRAPOLATION, INTERPOLATION or INTERPOLATION_AND_EXTRAPOLATION)
+  public void set_splitStrategy( int theStrategy ) {
+    this.splitStrategy = theStrategy;
+  }
+  
+  // returns the ID of the sensor to be calibrated
+  public int get_sensorID() {
+    return this.sID;
+  }
+  
+  // returns the position of the ID in each piece of calibration data
+  public int get_indexID() {
+    return this.iID;
+  }
+  
+  // returns the number of values that a piece of calibration data needs to have (the last position used plus one)
+  public int get_numberOfValues() {
+    return 1 + Math.max( Math.max( Math.max( this.iID , this.iwm ) , Math.max( this.ix , this.iy ) ) , Math.max( this.iz , this.iT ) );
+  }
+  
+  // returns true if the last calibration was completed, or restored from the cache
+  public boolean is_calibrated() {
+    return this.calibrated;
+  }
+  
+  // returns the paths of the files written by the last calibration (see add_output)
+  public ArrayList<String> get_outputs() {
+    return new ArrayList<String>( this.outputs );
+  }
+  
+  // returns a description of every parameter that changes the results of the calibration (it is part of the key of the results in the cache)
+  public String get_configuration() {
+    return this.getClass().getSimpleName() + " sensor=" + this.sID + this.get_sensorType() + " indexes=" + this.iID + "," + this.ix + "," + this.iy + "," + this.iz + "," + this.iT + "," + this.iwm +
+           " split=" + this.splitStrategy + " maxN=" + MAX_POLYNOMIAL_ORDER + " proportion=" + PROPORTION_OF_CALIBRATION_DATA + " bins=" + NUMBER_OF_TEMPERATURE_BINS +
+           " crossValidation=" + CROSS_VALIDATION + "," + NUMBER_OF_FOLDS + " bootstrap=" + BOOTSTRAP + "," + NUMBER_OF_BOOTSTRAP_BLOCKS + "," + NUMBER_OF_BOOTSTRAP_REPLICATES + "," + BOOTSTRAP_CONFIDENCE +
+           " compare=" + COMPARE_SPLIT_STRATEGIES + " snapshots=" + WRITE_SNAPSHOTS + " text=" + EXPORT_TEXT_DATA + " temperature=" + NORMALIZED_TEMPERATURE + "," + CHEBYSHEV_BASIS +
+           " accumulation=" + STREAMED_ACCUMULATION + "," + MAX_STREAMED_TENSORS + "," + PARALLEL_ACCUMULATION + "," + ACCUMULATION_CHUNK_SIZE + "," + DEDUPLICATE_MEASUREMENTS + " warmStart=" + WARM_START_ORDER_SWEEP + "," + WARM_START_FINAL_CALIBRATION +
+           " earlyStopping=" + EARLY_STOPPING_SWEEP + "," + ORDER_SWEEP_PATIENCE + " progressive=" + PROGRESSIVE_CALIBRATION + "," + PROGRESSIVE_SAMPLE_PROPORTION + "," + PROGRESSIVE_SAMPLE_GROUPS + "," + PROGRESSIVE_SAMPLE_SEED +
+           " " + CalibrationSolver.get_configuration();
+  }
+  
+  // returns true if the results of the calibrations are kept in the cache (so the data files have to be hashed while they are scanned)
+  public boolean caches_results() {
+    return CACHE_RESULTS;
+  }
+  
+  // restores from the cache the results of calibrating the data file fileName stored in dataPath. Returns false if they are not in the cache
+  public boolean restore_fromCache( String dataPath , String fileName ) {
+    this.calibrated = false;
+    if( !CACHE_RESULTS ) return false;
+    fileName = fileName.replace( ".dat" , "" );
+    try{
+      String key = CalibrationCache.get_key( dataPath + fileName + ".dat" , this.get_configuration() );
+      if( !new CalibrationCache( dataPath + CACHE_FOLDER , CACHE_MAX_SIZE ).restore( key , dataPath + fileName + ".dat" , dataPath + this.sID + this.get_sensorType() + "_" + fileName ) ) return false;
+    }catch( Exception e ){
+      println( "Error: " + e.getMessage() );
+      return false;
+    }
+    System.out.println( "Calibration of the " + this.get_sensorName() + " " + this.sID + " restored from the cache." );
+    this.calibrated = true;
+    return true;
+  }
+  
+  // calibrates the measurements previously read from the data files, and stores in fPath (without extension) the calibration, and the errors for each polynomial order
   public void calibrate( String fPath ) {
     System.out.println( "Computing polynomial calibration of the " + this.get_sensorName() + "..." );
-    this.set_intervalsT( fPath );
+    // we set the statistics of each temperature bin (this is the only pass over the measurements needed to build the tensors)
+    this.profile.begin( this.get_phase( "temperature bins" ) );
+    this.set_bins();
+    this.profile.end( this.get_phase( "temperature bins" ) );
+    this.profile.set( this.get_phase( "temperature bins" ) , "measurements" , this.data.size() );
+    if( COMPARE_SPLIT_STRATEGIES  &&  !this.provisional ){
+      this.profile.begin( "compare split strategies" );
+      this.compare_splitStrategies( fPath );
+      this.profile.end( "compare split strategies" );
+    }
+    this.profile.begin( this.get_phase( "split" ) );
+    this.set_intervalsT( this.splitStrategy );
+    this.profile.end( this.get_phase( "split" ) );
     // we set the tensors
+    this.profile.begin( this.get_phase( "tensors" ) );
     this.reset_tensors();
-    this.set_tensors( fPath );
-    PrintWriter errFile = createWriter( fPath + ".err" );
-    double[] ce0 = this.compute_error0( fPath );
+    this.set_tensors();
+    this.profile.end( this.get_phase( "tensors" ) );
+    this.profile.set( this.get_phase( "tensors" ) , "calibrationMeasurements" , this.tensors.W );
+    PrintWriter errFile = createWriter( this.add_output( fPath + ".err" ) );
+    this.profile.begin( this.get_phase( "default error" ) );
+    double[] ce0 = this.compute_error0();
+    this.profile.end( this.get_phase( "default error" ) );
     errFile.println( -1 + " " + ce0[0] + " " + ce0[1] + " " + ce0[2] + " " + ce0[3] );
-    // and for each polynomial order,
+    // and for each polynomial order (each one with its own solver, so they can be computed at the same time),
+    this.profile.begin( this.get_phase( "order sweep" ) );
+    OrderTask[] orderTasks = this.start_orderSweep();
     double minErr = Double.MAX_VALUE;
     int nMinErr = 0;
+    double[] ceMinErr = null;
+    String[] report = new String[MAX_POLYNOMIAL_ORDER+1];
+    boolean stopped = false;
+    int nComputed = MAX_POLYNOMIAL_ORDER;
     for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+      if( stopped ){
+        errFile.println( n + " NaN NaN NaN NaN" );
+        report[n] = "order " + n + ": skipped";
+        this.profile.set( this.get_phase( "order " + n ) , "skipped" , true );
+        continue;
+      }
+      // the sweep stops if the calibration is interrupted
+      if( Thread.currentThread().isInterrupted() ){
+        this.stop_orderSweep( orderTasks , n );
+        errFile.close();
+        this.check_interrupted();
+      }
       System.out.println( "  Polynomial order: " + n );
-      // we compute the calibration
-      this.compute_calibration( n , null );
-      // and we compute the error with the validation data
-      double[] ce = this.compute_error( fPath );
+      // we take the error with the validation data
+      double[] ce = ( CONCURRENT_ORDER_SWEEP )? orderTasks[n].join() : orderTasks[n].invoke();
       errFile.println( n + " " + ce[0] + " " + ce[1] + " " + ce[2] + " " + ce[3] );
+      report[n] = this.get_report( "order " + n , orderTasks[n].solver );
+      this.profile_order( this.get_phase( "order " + n ) , orderTasks[n] , ce );
       // we update the minimum error in validation data, and its corresponding polynomial order
       if( ce[2] < minErr ){
         minErr = ce[2];
         nMinErr = n;
+        ceMinErr = ce;
+      }
+      // if the error has not improved in the last orders, the higher ones are skipped
+      if(  EARLY_STOPPING_SWEEP  &&  n - nMinErr >= ORDER_SWEEP_PATIENCE  &&  n < MAX_POLYNOMIAL_ORDER  ){
+        System.out.println( "  The validation error has not improved since order " + nMinErr + ": skipping orders " + (n+1) + " to " + MAX_POLYNOMIAL_ORDER );
+        this.stop_orderSweep( orderTasks , n+1 );
+        stopped = true;
+        nComputed = n;
       }
     }
     errFile.flush();
     errFile.close();
+    this.profile.end( this.get_phase( "order sweep" ) );
+    this.check_interrupted();
+    // or the polynomial order with the minimum cross-validation cost (among the computed ones, since the solvers of the skipped orders are used below)
+    if( CROSS_VALIDATION ){
+      this.profile.begin( this.get_phase( "cross validation" ) );
+      nMinErr = this.cross_validate( fPath , nMinErr , nComputed );
+      this.profile.end( this.get_phase( "cross validation" ) );
+    }
     // finally, we compute the calibration with the polynomial order that gave the minimum error
     System.out.println( " Best polynomial order: " + nMinErr );
+    if( BOOTSTRAP  &&  !this.provisional ){
+      this.profile.begin( "bootstrap" );
+      this.bootstrap( fPath , orderTasks[nMinErr].solver );
+      this.profile.end( "bootstrap" );
+    }
+    this.check_interrupted();
     this.intervalsT = new double[]{ this.Tmin , this.Tmax };
-    this.compute_calibration( nMinErr , fPath );
+    this.set_calibrationBins();
+    this.compute_calibration( nMinErr , fPath , ( WARM_START_FINAL_CALIBRATION )? orderTasks[nMinErr].solver : null , report );
+    this.profile_order( this.get_phase( "final calibration" ) , null , null );
     // and we save the calibration
+    this.profile.begin( this.get_phase( "export" ) );
     this.save_calibration( fPath + ".cal" );
+    if( WRITE_SNAPSHOTS  &&  !this.provisional ) this.save_snapshot( fPath + ".sst" );
+    this.profile.end( this.get_phase( "export" ) );
+    // the solutions of a provisional calibration are kept to start the next one
+    if( this.provisional ){
+      this.initialSolvers = new CalibrationSolver[MAX_POLYNOMIAL_ORDER+1];
+      for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++) this.initialSolvers[n] = ( orderTasks[n].skipped )? null : orderTasks[n].solver;
+      if( ceMinErr != null ) System.out.println( " Provisional calibration (order " + nMinErr + "): mean error " + ceMinErr[2] + " in validation data, stored in " + fPath + ".cal" );
+    }
+  }
+  
+  // calibrates the measurements previously read from the data files as the method above, but computing first a provisional calibration with a
+  // stratified sample of the measurements (see get_stratifiedSample), stored in fPath_provisional. Then, each polynomial order of the calibration
+  // with all the measurements starts from the provisional solution
+  public void calibrate_progressive( String fPath ) {
+    MeasurementStore all = this.data;
+    MeasurementStore sample = this.get_stratifiedSample( PROGRESSIVE_SAMPLE_PROPORTION );
+    if(  sample.size() >= 9  &&  sample.size() <= all.size()/2  ){
+      System.out.println( "Provisional calibration with " + sample.size() + " of " + all.size() + " measurements:" );
+      this.data = sample;
+      this.provisional = true;
+      try{
+        this.calibrate( fPath + "_provisional" );
+      }finally{
+        this.provisional = false;
+        this.data = all;
+      }
+    }
+    try{
+      this.calibrate( fPath );
+    }finally{
+      this.initialSolvers = null;
+    }
   }
   
   // calibrates the selected sensor using the data in fileName using the method above
+  // the data file is read only once: the variances are computed, and the measurements are selected, in the same pass
   public void calibrate_withFile( String dataPath , String fileName ) {
     fileName = fileName.replace( ".dat" , "" );
-    this.compute_variances( dataPath + fileName );
+    if( this.restore_fromCache( dataPath , fileName ) ) return;
+    this.scan_dataFile( dataPath + fileName );
+    this.calibrate_withScannedData( dataPath , fileName );
+  }
+  
+  // calibrates the selected sensor using the measurements taken from fileName with scan_values (see CalibrationDriver)
+  public void calibrate_withScannedData( String dataPath , String fileName ) {
+    this.profile.resume();
+    this.outputs.clear();
+    this.calibrated = false;
+    this.check_interrupted();
+    fileName = fileName.replace( ".dat" , "" );
     String fPath = dataPath + this.sID + this.get_sensorType() + "_" + fileName;
-    int Ndat = this.prepare_dataFile( dataPath+fileName , fPath );
-    if( Ndat < 9 ){
+    if( this.data.size() < 9 ){
       System.out.println( "Not enough data to calibrate." );
-      // now we delete the old file
-      File fNoData = new File( fPath + ".dat" );
-      fNoData.delete();
+      this.reset_data();
       return;
     }
-    this.calibrate( fPath );
+    if( PROGRESSIVE_CALIBRATION ){
+      this.calibrate_progressive( fPath );
+    }else{
+      this.calibrate( fPath );
+    }
     // and we also generate the calibrated data
+    this.profile.begin( "export" );
     this.generate_calibratedData( fPath );
+    this.profile.end( "export" );
+    if( WRITE_PROFILE ) this.write_profile( fPath , dataPath + fileName + ".dat" );
+    if(  CACHE_RESULTS  &&  this.dataDigest != null  ) this.store_inCache( dataPath , fileName );
+    this.calibrated = true;
+    // finally, we release the memory used by the measurements
+    this.reset_data();
     System.out.println();
   }
   
   // calibrates the selected sensor using all calibration data stored in dataPath
+  // if there are snapshots of previous calibrations (.sst files), they are merged instead of reading the measurements
   public void calibrate_withAll( String dataPath ) {
+    this.profile.reset();
+    this.outputs.clear();
+    this.calibrated = false;
+    this.profile.begin( "merge snapshots" );
+    boolean merged = this.merge_snapshots( dataPath );
+    this.profile.end( "merge snapshots" );
+    if( merged ){
+      String fPath = dataPath + this.sID + this.get_sensorType();
+      this.calibrate_withSnapshots( fPath );
+      if( WRITE_PROFILE ) this.write_profile( fPath , dataPath );
+      this.calibrated = true;
+      System.out.println();
+      return;
+    }
     // first, we combine the measurements
+    this.profile.begin( "combine files" );
     String fPath = this.combine_files( dataPath );
+    this.profile.end( "combine files" );
+    this.profile.set( "combine files" , "measurements" , this.data.size() );
     // now we calibrate normally
-    this.calibrate( fPath );
-    // finally, we remove the file with the combined measurements
-    File theFile = new File( fPath + ".dat" );
-    theFile.delete();
+    if( PROGRESSIVE_CALIBRATION ){
+      this.calibrate_progressive( fPath );
+    }else{
+      this.calibrate( fPath );
+    }
+    if( WRITE_PROFILE ) this.write_profile( fPath , dataPath );
+    this.calibrated = true;
+    // finally, we release the memory used by the combined measurements
+    this.reset_data();
     System.out.println();
   }
   
-  // resets the current approximation to the solution
-  public void reset_zk() {
-    for(int i=0; i<this.zk.length; i++){
-      this.zk[i] = 0.0;
+  // calibrates the selected sensor using the tensors of each temperature bin (previously merged from snapshots), and stores the calibration in fPath (without extension)
+  // there are no measurements to compute the errors, so the polynomial order is selected with the cost in the validation bins (see validate_withBins), or with
+  // cross-validation (see cross_validate) if CROSS_VALIDATION and every snapshot has the tensors of each fold
+  public void calibrate_withSnapshots( String fPath ) {
+    System.out.println( "Computing polynomial calibration of the " + this.get_sensorName() + " with snapshots..." );
+    int nBest;
+    if(  CROSS_VALIDATION  &&  this.foldTensors != null  ){
+      this.profile.begin( "cross validation" );
+      nBest = this.cross_validate( fPath , 0 , MAX_POLYNOMIAL_ORDER );
+      this.profile.end( "cross validation" );
+    }else{
+      this.profile.begin( "validation" );
+      nBest = this.validate_withBins( fPath );
+      this.profile.end( "validation" );
+    }
+    System.out.println( " Best polynomial order: " + nBest );
+    // the calibration is computed with all the bins
+    this.reset_tensors();
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++) this.tensors.merge( this.binTensors[b] );
+    this.intervalsT = new double[]{ this.Tmin , this.Tmax };
+    this.compute_calibration( nBest , fPath );
+    this.profile_order( "final calibration" , null , null );
+    this.profile.begin( "export" );
+    this.save_calibration( fPath + ".cal" );
+    this.save_snapshot( fPath + ".sst" );
+    this.profile.end( "export" );
+  }
+  
+  // computes the temperature calibration of theN order. First we need to set the tensors with the two methods above
+  public void compute_calibration( int theN , String filePath ){
+    this.compute_calibration( theN , filePath , null , new String[0] );
+  }
+  
+  // computes the temperature calibration of theN order starting from the solution of theInitial solver (if it is not null), and prints in the .lma file the report lines before the iterations
+  public void compute_calibration( int theN , String filePath , CalibrationSolver theInitial , String[] report ){
+    // we generate the file to print the errors
+    PrintWriter lmaFile = null;
+    if( filePath != null ){
+      lmaFile = createWriter( this.add_output( filePath + ".lma" ) );
+      for(int i=0; i<report.length; i++) lmaFile.println( "# " + report[i] );
+    }
+    if(  theInitial != null  &&  theInitial.get_N() == theN  ){
+      // the initial solver already has the solution of theN order with the same tensors (the sweep, see calibrate), so it is not computed again
+      this.solver.copy_solution( theInitial );
+    }else if( theInitial != null ){
+      this.solver.compute_calibration( theN , theInitial , lmaFile );
+    }else{
+      this.solver.compute_calibration( theN , lmaFile );
+    }
+    if( lmaFile != null ){
+      lmaFile.println( "# " + this.get_report( "final order " + theN , this.solver ) );
+      lmaFile.flush();
+      lmaFile.close();
     }
-    this.zk[0] = 1.0;
-    this.zk[1] = 0.0;   this.zk[2] = 1.0;
-    this.zk[3] = 0.0;   this.zk[4] = 0.0;   this.zk[5] = 1.0;
-    this.zk[6] = 0.0;   this.zk[7] = 0.0;   this.zk[8] = 0.0;
   }
   
   // resets the tensors
   public void reset_tensors() {
-    this.W = 0.0;
-    // first we reset the tensors
-    for(int i=0; i<4; i++){
-      for(int j=0; j<4; j++){
-        for(int n=0; n<this.maxN21; n++) this.Y2[n][i][j] = 0.0;
-        for(int k=0; k<4; k++){
-          for(int l=0; l<4; l++){
-            for(int n=0; n<this.maxN41; n++) this.X4[n][i][j][k][l] = 0.0;
-          }
+    this.tensors.reset();
+  }
+  
+  // sets the tensors using the calibration data (summing the tensors of the temperature bins inside the temperature intervals)
+  private void set_tensors() {
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++){
+      if( this.calibrationBins[b] ) this.tensors.merge( this.binTensors[b] );
+    }
+  }
+  
+  // sets the temperature range of the measurements, and the tensors of each temperature bin
+  private void set_bins() {
+    System.out.print( "  Setting temperature bins..." );
+    // first, we find the maximum and minimum temperature
+    this.set_rangeT();
+    // then, we build the tensors of each bin (and the ones of each fold)
+    CalibrationTensors[] theBins;
+    if(  this.temperatureTensors != null  &&  !this.provisional  ){
+      // the measurements of each temperature were accumulated while scanning, so their tensors only need the powers of their normalized temperature
+      theBins = this.new_binTensors();
+      for(java.util.Map.Entry<Long,CalibrationTensors[]> entry : this.temperatureTensors.entrySet()){
+        double T = Double.longBitsToDouble( entry.getKey()*TEMPERATURE_KEY_INVERSE );
+        double t = this.get_t( T );
+        CalibrationTensors[] theTensors = entry.getValue();
+        for(int f=0; f<theTensors.length; f++){
+          if( theTensors[f] == null ) continue;
+          theBins[ this.get_bin( T ) ].merge_atTemperature( theTensors[f] , t );
+          if( FOLD_TENSORS ) theBins[ NUMBER_OF_TEMPERATURE_BINS + f ].merge_atTemperature( theTensors[f] , t );
         }
       }
+    }else if( PARALLEL_ACCUMULATION ){
+      theBins = this.get_pool().invoke( new TensorsTask( 0 , this.data.size() , false ) );
+    }else{
+      theBins = this.new_binTensors();
+      this.include_measurements( theBins , 0 , this.data.size() );
     }
+    this.binTensors = java.util.Arrays.copyOfRange( theBins , 0 , NUMBER_OF_TEMPERATURE_BINS );
+    this.foldTensors = java.util.Arrays.copyOfRange( theBins , NUMBER_OF_TEMPERATURE_BINS , theBins.length );
+    System.out.println( " done." );
   }
   
-  // sets the tensors using the data contained in filePath
-  private void set_tensors( String filePath ) {
-    System.out.print( "  Setting tensors..." );
-    this.open_file( filePath + ".dat" );
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      if( this.is_T_inside( theValues[3] ) ){
-        this.include_measurement( 1.0 , theValues[0] , theValues[1] , theValues[2] , theValues[3] , theValues[4] );
+  // sets the minimum and maximum temperatures of the measurements
+  private void set_rangeT() {
+    this.Tmin = Double.MAX_VALUE;
+    this.Tmax = -Double.MAX_VALUE;
+    for(int m=0; m<this.data.size(); m++){
+      double T = this.data.get_T( m );
+      this.Tmin = ( this.Tmin < T )? this.Tmin : T;
+      this.Tmax = ( this.Tmax > T )? this.Tmax : T;
+    }
+  }
+  
+  // gets a stratified sample of the measurements. The strata are the temperature bins and the groups of measurement numbers, and a uniform random
+  // sample (reservoir sampling) of theProportion of the measurements of each stratum (at least one) is taken. The measurements with the minimum and
+  // maximum temperatures are always included, so the sample has the same temperature range (and the same normalized temperature) as all the measurements
+  private MeasurementStore get_stratifiedSample( double theProportion ) {
+    this.set_rangeT();
+    int size = this.data.size();
+    int[] stratum = new int[size];
+    int[] count = new int[NUMBER_OF_TEMPERATURE_BINS*PROGRESSIVE_SAMPLE_GROUPS];
+    int mMin = 0;
+    int mMax = 0;
+    for(int m=0; m<size; m++){
+      double T = this.data.get_T( m );
+      int group = (int)Math.floorMod( (long)Math.floor( this.data.get_ID( m ) ) , (long)PROGRESSIVE_SAMPLE_GROUPS );
+      stratum[m] = this.get_bin( T )*PROGRESSIVE_SAMPLE_GROUPS + group;
+      count[ stratum[m] ]++;
+      if( T < this.data.get_T( mMin ) ) mMin = m;
+      if( T > this.data.get_T( mMax ) ) mMax = m;
+    }
+    // the reservoirs of all the strata are stored one after the other
+    int[] capacity = new int[count.length];
+    int[] offset = new int[count.length+1];
+    for(int s=0; s<count.length; s++){
+      capacity[s] = (int)Math.ceil( theProportion*count[s] );
+      offset[s+1] = offset[s] + capacity[s];
+    }
+    int[] reservoir = new int[ offset[count.length] ];
+    int[] seen = new int[count.length];
+    java.util.Random random = new java.util.Random( PROGRESSIVE_SAMPLE_SEED );
+    for(int m=0; m<size; m++){
+      int s = stratum[m];
+      seen[s]++;
+      if( seen[s] <= capacity[s] ){
+        reservoir[ offset[s] + seen[s] - 1 ] = m;
+      }else{
+        int r = random.nextInt( seen[s] );
+        if( r < capacity[s] ) reservoir[ offset[s] + r ] = m;
       }
-      theValues = this.get_nextValuesFromFile();
     }
-    this.close_file();
+    // the sampled measurements keep their order
+    boolean[] selected = new boolean[size];
+    for(int i=0; i<reservoir.length; i++) selected[ reservoir[i] ] = true;
+    if( size > 0 ){
+      selected[mMin] = true;
+      selected[mMax] = true;
+    }
+    MeasurementStore sample = new MeasurementStore();
+    for(int m=0; m<size; m++){
+      if( selected[m] ) sample.add( this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , this.data.get_T( m ) , this.data.get_module( m ) , this.data.get_ID( m ) );
+    }
+    return sample;
+  }
+  
+  // removes the stored measurements, and the tensors of each temperature accumulated while they were scanned
+  private void reset_data() {
+    this.data.reset();
+    this.temperatureTensors = null;
+    this.streamedTensors = 0;
+    this.lastTensors = null;
+  }
+  
+  // includes a scanned measurement in the zero-order tensors of its temperature and its fold. If that needs more than MAX_STREAMED_TENSORS,
+  // the accumulation is abandoned, and set_bins builds the tensors with the stored measurements
+  private void include_inTemperature( double x , double y , double z , double T , double module , double theID ) {
+    if(  this.lastTensors == null  ||  T != this.lastT  ){
+      long key = Double.doubleToLongBits( T )*TEMPERATURE_KEY_FACTOR;
+      this.lastTensors = this.temperatureTensors.get( key );
+      if( this.lastTensors == null ){
+        this.lastTensors = new CalibrationTensors[( FOLD_TENSORS )? NUMBER_OF_FOLDS : 1];
+        this.temperatureTensors.put( key , this.lastTensors );
+      }
+      this.lastT = T;
+    }
+    int f = ( FOLD_TENSORS )? this.get_fold( theID ) : 0;
+    if( this.lastTensors[f] == null ){
+      if( this.streamedTensors >= MAX_STREAMED_TENSORS ){
+        this.temperatureTensors = null;
+        this.lastTensors = null;
+        return;
+      }
+      this.lastTensors[f] = new CalibrationTensors( 0 );
+      this.streamedTensors++;
+    }
+    this.lastTensors[f].include_measurement( 1.0 , x , y , z , T , module );
+  }
+  
+  // gets the temperature bin of T
+  private int get_bin( double T ) {
+    if( this.Tmax <= this.Tmin ) return 0;
+    int b = (int)( ( T - this.Tmin )/( this.Tmax - this.Tmin )*NUMBER_OF_TEMPERATURE_BINS );
+    return Math.min( Math.max( b , 0 ) , NUMBER_OF_TEMPERATURE_BINS-1 );
+  }
+  
+  // gets the fold of the cross-validation of a measurement number
+  private int get_fold( double theID ) {
+    return (int)Math.floorMod( (long)Math.floor( theID ) , (long)NUMBER_OF_FOLDS );
+  }
+  
+  // gets empty tensors for each temperature bin, followed by empty tensors for each fold (if FOLD_TENSORS)
+  private CalibrationTensors[] new_binTensors() {
+    CalibrationTensors[] theBins = new CalibrationTensors[NUMBER_OF_TEMPERATURE_BINS + ( ( FOLD_TENSORS )? NUMBER_OF_FOLDS : 0 )];
+    for(int b=0; b<theBins.length; b++) theBins[b] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    return theBins;
+  }
+  
+  // creates the tasks that compute the calibration of each polynomial order (they are started if CONCURRENT_ORDER_SWEEP)
+  private OrderTask[] start_orderSweep() {
+    OrderTask[] orderTasks = new OrderTask[MAX_POLYNOMIAL_ORDER+1];
+    for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+      boolean initialSolution = ( this.initialSolvers != null  &&  this.initialSolvers[n] != null );
+      orderTasks[n] = new OrderTask( n , ( WARM_START_ORDER_SWEEP  &&  n > 0  &&  !initialSolution )? orderTasks[n-1] : null );
+      if( CONCURRENT_ORDER_SWEEP ) this.get_pool().execute( orderTasks[n] );
+    }
+    return orderTasks;
+  }
+  
+  // skips the tasks of the orders from n0 (included). The tasks already started can not be interrupted, so we wait for them
+  // (the ones that have not started yet will return without computing anything)
+  private void stop_orderSweep( OrderTask[] orderTasks , int n0 ) {
+    for(int n=n0; n<=MAX_POLYNOMIAL_ORDER; n++) orderTasks[n].skipped = true;
+    if( CONCURRENT_ORDER_SWEEP ){
+      for(int n=n0; n<=MAX_POLYNOMIAL_ORDER; n++) orderTasks[n].quietlyJoin();
+    }
+  }
+  
+  // stores in fPath.spl the errors of each polynomial order (as in the .err file) with each split strategy. The data of each split is assembled with the statistics of the temperature bins
+  private void compare_splitStrategies( String fPath ) {
+    PrintWriter splFile = createWriter( this.add_output( fPath + ".spl" ) );
+    this.compute_error0();
+    for(int s=EXTRAPOLATION; s<=INTERPOLATION_AND_EXTRAPOLATION; s++){
+      System.out.println( "  Split strategy: " + s );
+      this.set_intervalsT( s );
+      this.reset_tensors();
+      this.set_tensors();
+      double[] ce0 = this.get_errors( this.binErrors0 );
+      splFile.println( s + " " + -1 + " " + ce0[0] + " " + ce0[1] + " " + ce0[2] + " " + ce0[3] );
+      OrderTask[] orderTasks = this.start_orderSweep();
+      for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+        double[] ce = ( CONCURRENT_ORDER_SWEEP )? orderTasks[n].join() : orderTasks[n].invoke();
+        splFile.println( s + " " + n + " " + ce[0] + " " + ce[1] + " " + ce[2] + " " + ce[3] );
+      }
+    }
+    splFile.flush();
+    splFile.close();
+  }
+  
+  // task that computes the calibration of one polynomial order with its own solver, and returns its errors (see compute_error).
+  // If the task of the previous order is given, the calibration starts from its solution (or from the provisional solution of the same order, if there is one).
+  // If the task is skipped before it starts its calibration, it returns null (and has no solver)
+  private class OrderTask extends RecursiveTask<double[]> {
+    
+    private int n;
+    private OrderTask previous;
+    private CalibrationSolver solver;
+    private volatile boolean skipped;
+    private long errorTime;  // time used to compute the errors (ns)
+    
+    public OrderTask( int the_n , OrderTask thePrevious ) {
+      this.n = the_n;
+      this.previous = thePrevious;
+    }
+    
+    protected double[] compute() {
+      if( this.previous != null ) this.previous.join();
+      if( this.skipped ) return null;
+      this.solver = new CalibrationSolver( MAX_POLYNOMIAL_ORDER , tensors );
+      if(  initialSolvers != null  &&  initialSolvers[this.n] != null  ){
+        this.solver.compute_calibration( this.n , initialSolvers[this.n] , null );
+      }else if( this.previous != null ){
+        this.solver.compute_calibration( this.n , this.previous.solver , null );
+      }else{
+        this.solver.compute_calibration( this.n , null );
+      }
+      long t0 = System.nanoTime();
+      double[] ce = compute_error( this.solver );
+      this.errorTime = System.nanoTime() - t0;
+      return ce;
+    }
+    
+  }
+  
+  // selects the polynomial order with the tensors of the temperature bins (there are no measurements to compute the errors): each order is calibrated with
+  // the bins of the calibration data (see set_intervalsT), and its cost is evaluated with the tensors of the validation bins. The costs are stored in fPath.val,
+  // and the order with the minimum cost is returned
+  private int validate_withBins( String fPath ) {
+    this.set_intervalsT( this.splitStrategy );
+    System.out.print( "  Validating polynomial orders..." );
+    CalibrationTensors total = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    CalibrationTensors validation = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++){
+      total.merge( this.binTensors[b] );
+      if( !this.calibrationBins[b] ) validation.merge( this.binTensors[b] );
+    }
+    if(  validation.W == 0.0  ||  validation.W >= total.W  ){
+      System.out.println( " not enough temperature bins." );
+      return 0;
+    }
+    // the calibration data is the total minus the validation data, as the training data of a fold
+    double[] costs = new FoldTask( total , validation ).compute();
+    PrintWriter valFile = createWriter( this.add_output( fPath + ".val" ) );
+    int nMinCost = 0;
+    for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+      valFile.println( n + " " + costs[n] );
+      if( costs[n] < costs[nMinCost] ) nMinCost = n;
+    }
+    valFile.flush();
+    valFile.close();
     System.out.println( " done." );
+    return nMinCost;
   }
   
-  // updates the tensors with a data combination
-  public void include_measurement( double w , double x1 , double x2 , double x3 , double T , double y ) {
-    // only if w is positive
-    if( w < 0.0 ){
-      println( "[TriaxialCalibrator] include_measurement: w cannot be negative." );
+  // computes the cost of each polynomial order with k-fold cross-validation: the calibration is computed with the tensors of all the folds but one
+  // (subtracting the tensors of that fold from the total), and the cost is evaluated with the tensors of that fold. The costs are stored in fPath.cv,
+  // and the polynomial order up to nMax with the minimum cost (weighted mean of the folds) is returned (or nDefault if there are not enough folds with measurements)
+  private int cross_validate( String fPath , int nDefault , int nMax ) {
+    System.out.print( "  Cross-validating polynomial orders..." );
+    CalibrationTensors total = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    int nFolds = 0;
+    for(int f=0; f<NUMBER_OF_FOLDS; f++){
+      total.merge( this.foldTensors[f] );
+      if( this.foldTensors[f].W > 0.0 ) nFolds++;
+    }
+    if( nFolds < 2 ){
+      System.out.println( " not enough measurement numbers." );
+      return nDefault;
+    }
+    // the folds are computed at the same time
+    FoldTask[] foldTasks = new FoldTask[NUMBER_OF_FOLDS];
+    for(int f=0; f<NUMBER_OF_FOLDS; f++){
+      foldTasks[f] = new FoldTask( total , this.foldTensors[f] );
+      foldTasks[f].fork();
+    }
+    double[][] costs = new double[NUMBER_OF_FOLDS][];
+    for(int f=0; f<NUMBER_OF_FOLDS; f++) costs[f] = foldTasks[f].join();
+    // now we compute the weighted mean cost of each order
+    PrintWriter cvFile = createWriter( this.add_output( fPath + ".cv" ) );
+    double minCost = Double.MAX_VALUE;
+    int nMinCost = nDefault;
+    for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+      double cost = 0.0;
+      double W = 0.0;
+      String line = "";
+      for(int f=0; f<NUMBER_OF_FOLDS; f++){
+        if( this.foldTensors[f].W > 0.0 ){
+          cost += this.foldTensors[f].W*costs[f][n];
+          W += this.foldTensors[f].W;
+        }
+        line += " " + costs[f][n];
+      }
+      cost /= W;
+      cvFile.println( n + " " + cost + line );
+      if(  n <= nMax  &&  cost < minCost  ){
+        minCost = cost;
+        nMinCost = n;
+      }
+    }
+    cvFile.flush();
+    cvFile.close();
+    System.out.println( " done." );
+    return nMinCost;
+  }
+  
+  // task that computes the calibration of every polynomial order with the total tensors minus the ones of a fold, and returns the costs with the tensors of the fold
+  private class FoldTask extends RecursiveTask<double[]> {
+    
+    private CalibrationTensors total;
+    private CalibrationTensors fold;
+    
+    public FoldTask( CalibrationTensors theTotal , CalibrationTensors theFold ) {
+      this.total = theTotal;
+      this.fold = theFold;
+    }
+    
+    protected double[] compute() {
+      double[] costs = new double[MAX_POLYNOMIAL_ORDER+1];
+      if( this.fold.W == 0.0 ) return costs;
+      CalibrationTensors training = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+      training.merge( this.total );
+      training.subtract( this.fold );
+      CalibrationSolver theSolver = new CalibrationSolver( MAX_POLYNOMIAL_ORDER , training );
+      for(int n=0; n<=MAX_POLYNOMIAL_ORDER; n++){
+        if( WARM_START_ORDER_SWEEP  &&  n > 0 ){
+          theSolver.compute_calibration( n , theSolver , null );
+        }else{
+          theSolver.compute_calibration( n , null );
+        }
+        costs[n] = theSolver.compute_cost( this.fold );
+      }
+      return costs;
+    }
+    
+  }
+  
+  // computes the confidence intervals of the calibration coefficients of theSolver with a block bootstrap, and stores them in fPath.boot
+  // the tensors of each block (group of measurement numbers) are built once, and each replicate only merges the tensors of the blocks drawn (with replacement)
+  private void bootstrap( String fPath , CalibrationSolver theSolver ) {
+    System.out.print( "  Computing bootstrap confidence intervals..." );
+    // we build the tensors of each block with the calibration data
+    CalibrationTensors[] theBlocks;
+    if( PARALLEL_ACCUMULATION ){
+      theBlocks = this.get_pool().invoke( new TensorsTask( 0 , this.data.size() , true ) );
+    }else{
+      theBlocks = this.new_blockTensors();
+      this.include_blockMeasurements( theBlocks , 0 , this.data.size() );
+    }
+    // we only draw blocks with measurements
+    int nBlocks = 0;
+    for(int b=0; b<theBlocks.length; b++){
+      if( theBlocks[b].W > 0.0 ) theBlocks[nBlocks++] = theBlocks[b];
+    }
+    if( nBlocks < 2 ){
+      System.out.println( " not enough measurement numbers." );
       return;
     }
-    this.x1[0] = x1;
-    this.x1[1] = x2;
-    this.x1[2] = x3;
-    // we define the auxiliary factor for this measurement
-    double alpha = w/( this.W + w );
-    // and we add the contribution to the sum of weights
-    this.W += w;
-    // we define the square of the module
-    double y0 = y*y;
-    // now we add the contribution of this measurement to the tensors
-    // zeroth-order tensors
-    this.Tn[0] = 1.0;
-    for(int n=1; n<this.maxN41; n++) this.Tn[n] = this.Tn[n-1]*T;
-    // first-order tensors
-    for(int i=0; i<4; i++){
-      this.y1[i] = y0*this.x1[i];
-      // second-order tensors
-      for(int j=0; j<4; j++){
-        this.x2[i][j] = this.x1[i]*this.x1[j];
-        this.y2[i][j] = this.y1[i]*this.x1[j];
-        for(int n=0; n<this.maxN21; n++) this.Y2[n][i][j] = (1.0-alpha)*this.Y2[n][i][j] + alpha*this.y2[i][j]*this.Tn[n];
-        // third-order tensor
-        for(int k=0; k<4; k++){
-          this.x3[i][j][k] = this.x2[i][j]*this.x1[k];
-          // fourth-order tensor
-          for(int l=0; l<4; l++){
-            this.x4[i][j][k][l] = this.x3[i][j][k]*this.x1[l];
-            for(int n=0; n<this.maxN41; n++) this.X4[n][i][j][k][l] = (1.0-alpha)*this.X4[n][i][j][k][l] + alpha*this.x4[i][j][k][l]*this.Tn[n];
-          }  // end l
-        }  // end k
-      }  // end j
-    }  // end i
-  }  // end include_measurementCalibration( double w , double[] x , double y , double T )
+    // the replicates are computed at the same time
+    BootstrapTask[] bootstrapTasks = new BootstrapTask[NUMBER_OF_BOOTSTRAP_REPLICATES];
+    for(int r=0; r<NUMBER_OF_BOOTSTRAP_REPLICATES; r++){
+      bootstrapTasks[r] = new BootstrapTask( r , java.util.Arrays.copyOf( theBlocks , nBlocks ) , theSolver );
+      bootstrapTasks[r].fork();
+    }
+    int N = theSolver.get_N();
+    double[][] zr = new double[NUMBER_OF_BOOTSTRAP_REPLICATES][];
+    for(int r=0; r<NUMBER_OF_BOOTSTRAP_REPLICATES; r++){
+      zr[r] = bootstrapTasks[r].join();
+      if( NORMALIZED_TEMPERATURE  &&  CHEBYSHEV_BASIS ) zr[r] = this.get_ChebyshevCoefficients( zr[r] , N );
+    }
+    double[] z = ( NORMALIZED_TEMPERATURE  &&  CHEBYSHEV_BASIS )? this.get_ChebyshevCoefficients( theSolver.get_z() , N ) : theSolver.get_z();
+    // and we store the percentile intervals of each coefficient (in the basis of the .cal file)
+    PrintWriter bootFile = createWriter( this.add_output( fPath + ".boot" ) );
+    bootFile.println( N + " " + NUMBER_OF_BOOTSTRAP_REPLICATES + " " + BOOTSTRAP_CONFIDENCE );
+    double[] values = new double[NUMBER_OF_BOOTSTRAP_REPLICATES];
+    int rLower = (int)Math.floor( 0.5*( 1.0 - BOOTSTRAP_CONFIDENCE )*( NUMBER_OF_BOOTSTRAP_REPLICATES - 1 ) );
+    int rUpper = NUMBER_OF_BOOTSTRAP_REPLICATES - 1 - rLower;
+    for(int i=0; i<9*(N+1); i++){
+      double mean = 0.0;
+      double mean2 = 0.0;
+      for(int r=0; r<NUMBER_OF_BOOTSTRAP_REPLICATES; r++){
+        values[r] = zr[r][i];
+        mean += values[r];
+        mean2 += values[r]*values[r];
+      }
+      mean /= NUMBER_OF_BOOTSTRAP_REPLICATES;
+      mean2 /= NUMBER_OF_BOOTSTRAP_REPLICATES;
+      java.util.Arrays.sort( values );
+      bootFile.println( (i/9) + " " + (i%9) + " " + z[i] + " " + values[rLower] + " " + values[rUpper] + " " + Math.sqrt( Math.abs( mean2 - mean*mean ) ) );
+    }
+    bootFile.flush();
+    bootFile.close();
+    System.out.println( " done." );
+  }
   
-  // computes the temperature calibration of theN order. First we need to set the tensors with the two methods above
-  public void compute_calibration( int theN , String filePath ){
-    this.N = theN;
-    // we generate the file to print the errors
-    PrintWriter lmaFile = null;
-    if( filePath != null ){
-      lmaFile = createWriter( filePath + ".lma" );
-    }
-    // we compute the solution using the Levenberg–Marquardt algorithm
-    this.reset_zk();
-    double minError = Double.MAX_VALUE;
-    int itWithoutImprovement = 0;
-    for(int k=0; k<MAX_CALIBRATION_ITERATIONS; k++){
-      // first of all we update the calibration matrix
-      this.update_A();
-      // we compute the vector J^T*W*dy
-      double[] JTWdy = this.get_JTWdy();
-      // we compute the J^T*W*J matrix
-      double[][] JTWJ = this.get_JTWJ();
-      // we compute the next delta in the solution approximation ( delta^T*(J^T*J) = [J^T*(y-f)]^T )
-      this.solve( JTWJ , JTWdy , JTWJ.length );  // now dz is stored in JTWdy
-      // we compute the current error in the search for the zeros
-      double err = 0.0;
-      for(int i=0; i<9*(this.N+1); i++) err += JTWdy[i]*JTWdy[i];
-      if( lmaFile != null ){
-        lmaFile.println( k + " " + err );
+  // task that computes the calibration with one bootstrap replicate of the blocks, starting from the solution of theSolver (and with its polynomial order)
+  private class BootstrapTask extends RecursiveTask<double[]> {
+    
+    private int r;
+    private CalibrationTensors[] blocks;
+    private CalibrationSolver initial;
+    
+    public BootstrapTask( int the_r , CalibrationTensors[] theBlocks , CalibrationSolver theInitial ) {
+      this.r = the_r;
+      this.blocks = theBlocks;
+      this.initial = theInitial;
+    }
+    
+    protected double[] compute() {
+      // each replicate draws its blocks with its own (reproducible) sequence
+      java.util.Random random = new java.util.Random( this.r );
+      CalibrationTensors replicate = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+      for(int b=0; b<this.blocks.length; b++) replicate.merge( this.blocks[ random.nextInt( this.blocks.length ) ] );
+      CalibrationSolver theSolver = new CalibrationSolver( MAX_POLYNOMIAL_ORDER , replicate );
+      theSolver.compute_calibration( this.initial.get_N() , this.initial , null );
+      return java.util.Arrays.copyOf( theSolver.get_z() , 9*( this.initial.get_N() + 1 ) );
+    }
+    
+  }
+  
+  // gets a line with the number of iterations and the time spent by theSolver in its last calibration
+  private String get_report( String name , CalibrationSolver theSolver ) {
+    return name + ": " + theSolver.get_iterations() + " iterations, " + theSolver.get_time() + " ms (" + theSolver.get_initialization() + ")";
+  }
+  
+  //  PRIVATE METHODS FOR PROFILING
+  
+  // gets the name of a phase of the calibration (the phases of the provisional calibration are kept apart)
+  private String get_phase( String name ) {
+    return ( this.provisional )? "provisional " + name : name;
+  }
+  
+  // adds to thePhase the iterations and the time of the solver of theTask (or of the final calibration if theTask is null), and the errors ce in validation data
+  private void profile_order( String thePhase , OrderTask theTask , double[] ce ) {
+    CalibrationSolver theSolver = ( theTask != null )? theTask.solver : this.solver;
+    long solverTime = Math.round( 1.0e6*theSolver.get_time() );
+    this.profile.add_time( thePhase , solverTime );
+    this.profile.count( thePhase , "iterations" , theSolver.get_iterations() );
+    this.profile.set( thePhase , "solverTime" , 1.0e-9*solverTime );
+    this.profile.set( thePhase , "timePerIteration" , ( theSolver.get_iterations() > 0 )? 1.0e-9*solverTime/theSolver.get_iterations() : 0.0 );
+    this.profile.set( thePhase , "initialization" , theSolver.get_initialization() );
+    if( theTask != null ){
+      this.profile.add_time( thePhase , theTask.errorTime );
+      this.profile.set( thePhase , "validationTime" , 1.0e-9*theTask.errorTime );
+      this.profile.set( thePhase , "validationError" , ce[2] );
+    }
+  }
+  
+  // stores the profile of the calibration in fPath.prof.json. dataPath is the data file (or folder) that was calibrated
+  private void write_profile( String fPath , String dataPath ) {
+    this.profile.set_info( "sensor" , this.get_sensorName() );
+    this.profile.set_info( "sensorID" , this.sID );
+    this.profile.set_info( "data" , dataPath );
+    this.profile.set_info( "maxPolynomialOrder" , MAX_POLYNOMIAL_ORDER );
+    this.profile.set_info( "polynomialOrder" , this.solver.get_N() );
+    this.profile.set_info( "measurements" , this.data.size() );
+    this.profile.write_json( fPath + ".prof.json" );
+  }
+  
+  // updates the tensors of each temperature bin (and the ones of each fold) with the measurements from m0 (included) to m1 (excluded)
+  private void include_measurements( CalibrationTensors[] theBins , int m0 , int m1 ) {
+    if( DEDUPLICATE_MEASUREMENTS ){
+      // the identical measurements (of the same fold) are counted first
+      DuplicateCounter counter = new DuplicateCounter( m1 - m0 );
+      for(int m=m0; m<m1; m++){
+        counter.add( this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , this.data.get_T( m ) , this.data.get_module( m ) , ( FOLD_TENSORS )? this.get_fold( this.data.get_ID( m ) ) : 0 );
       }
-      if( err < minError ){
-        for(int i=0; i<9*(this.N+1); i++) this.z[i] = this.zk[i];
-        minError = err;
-        itWithoutImprovement = 0;
-      }else{
-        itWithoutImprovement++;
-        if( itWithoutImprovement > MAX_CALIBRATION_ITERATIONS_WITHOUT_IMPROVEMENT ) break;
+      for(int i=0; i<counter.size(); i++){
+        this.include_inBins( theBins , counter.get_count( i ) , counter.get_x( i ) , counter.get_y( i ) , counter.get_z( i ) , counter.get_T( i ) , counter.get_module( i ) , counter.get_group( i ) );
+      }
+    }else{
+      for(int m=m0; m<m1; m++){
+        this.include_inBins( theBins , 1.0 , this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , this.data.get_T( m ) , this.data.get_module( m ) , ( FOLD_TENSORS )? this.get_fold( this.data.get_ID( m ) ) : 0 );
       }
-      // we update the solution
-      for(int i=0; i<9*(this.N+1); i++) this.zk[i] += JTWdy[i];
-      // and now we correct for a right-handed orientation
-      if( this.zk[0] < 0.0 ) this.zk[0] = -this.zk[0];
-      if( this.zk[2] < 0.0 ) this.zk[2] = -this.zk[2];
-      if( this.zk[5] < 0.0 ) this.zk[5] = -this.zk[5];
-    }  // end iterations
-    if( lmaFile != null ){
-      lmaFile.flush();
-      lmaFile.close();
     }
-  }  // end compute_calibration()
-  
-  // computes the variance in the measurements of each axis
-  public void compute_variances( String filePath ) {
-    System.out.print( "Computing variances..." );
-    // variables used to compute the variance in the measurements
-    double mNumber = -1;
-    double Ex = 0.0;
-    double Exx = 0.0;
-    double Ey = 0.0;
-    double Eyy = 0.0;
-    double Ez = 0.0;
-    double Ezz = 0.0;
-    double Ndat = 0.0;
-    double Nvar = 0.0;
-    // first, we take the data of sID from the main file
-    this.open_file( filePath + ".dat" );
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      try{
-        if( this.measurement_condition( theValues ) ){
-          Ndat += 1.0;
-          if( theValues[0] != mNumber ){
-            Ex /= Ndat;
-            Ey /= Ndat;
-            Ez /= Ndat;
-            this.varX += Exx/Ndat - Ex*Ex;
-            this.varY += Eyy/Ndat - Ey*Ey;
-            this.varZ += Ezz/Ndat - Ez*Ez;
-            Nvar += 1.0;
-            mNumber = theValues[0];
-            Ex = 0.0;
-            Ey = 0.0;
-            Ez = 0.0;
-            Exx = 0.0;
-            Eyy = 0.0;
-            Ezz = 0.0;
-            Ndat = 0.0;
-          }
-          Ex += theValues[this.ix];
-          Ey += theValues[this.iy];
-          Ez += theValues[this.iz];
-          Exx += theValues[this.ix]*theValues[this.ix];
-          Eyy += theValues[this.iy]*theValues[this.iy];
-          Ezz += theValues[this.iz]*theValues[this.iz];
+  }
+  
+  // updates the tensors of the temperature bin of T (and the ones of theFold) with a measurement of weight w
+  private void include_inBins( CalibrationTensors[] theBins , double w , double x , double y , double z , double T , double module , int theFold ) {
+    double t = this.get_t( T );
+    theBins[ this.get_bin( T ) ].include_measurement( w , x , y , z , t , module );
+    if( FOLD_TENSORS ) theBins[ NUMBER_OF_TEMPERATURE_BINS + theFold ].include_measurement( w , x , y , z , t , module );
+  }
+  
+  // updates the tensors of each bootstrap block with the calibration data from m0 (included) to m1 (excluded)
+  private void include_blockMeasurements( CalibrationTensors[] theBlocks , int m0 , int m1 ) {
+    DuplicateCounter counter = ( DEDUPLICATE_MEASUREMENTS )? new DuplicateCounter( m1 - m0 ) : null;
+    for(int m=m0; m<m1; m++){
+      double T = this.data.get_T( m );
+      if( this.calibrationBins[ this.get_bin( T ) ] ){
+        int b = (int)Math.floorMod( (long)Math.floor( this.data.get_ID( m ) ) , (long)NUMBER_OF_BOOTSTRAP_BLOCKS );
+        if( DEDUPLICATE_MEASUREMENTS ){
+          counter.add( this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , T , this.data.get_module( m ) , b );
+        }else{
+          theBlocks[b].include_measurement( 1.0 , this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , this.get_t( T ) , this.data.get_module( m ) );
         }
-      }catch( Exception e ){
-        //println( "Exception: prepare_accelerometerFile: it could be due to a line with less values than expected." );
-        //println( "Error: " + e.getMessage() );
       }
-      theValues = this.get_nextValuesFromFile();
     }
-    this.close_file();
-    this.varX /= Nvar;
-    this.varY /= Nvar;
-    this.varZ /= Nvar;
+    if( DEDUPLICATE_MEASUREMENTS ){
+      for(int i=0; i<counter.size(); i++){
+        theBlocks[ counter.get_group( i ) ].include_measurement( counter.get_count( i ) , counter.get_x( i ) , counter.get_y( i ) , counter.get_z( i ) , this.get_t( counter.get_T( i ) ) , counter.get_module( i ) );
+      }
+    }
+  }
+  
+  // gets empty tensors for each bootstrap block
+  private CalibrationTensors[] new_blockTensors() {
+    CalibrationTensors[] theBlocks = new CalibrationTensors[NUMBER_OF_BOOTSTRAP_BLOCKS];
+    for(int b=0; b<theBlocks.length; b++) theBlocks[b] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    return theBlocks;
+  }
+  
+  // task that builds the partial tensors of each temperature bin (or of each bootstrap block) with a chunk of the measurements, splitting it while it is larger than ACCUMULATION_CHUNK_SIZE
+  // the partial tensors of both halves are merged (bin by bin) using their sums of weights
+  private class TensorsTask extends RecursiveTask<CalibrationTensors[]> {
+    
+    private int m0;
+    private int m1;
+    private boolean blocks;
+    
+    public TensorsTask( int the_m0 , int the_m1 , boolean areBlocks ) {
+      this.m0 = the_m0;
+      this.m1 = the_m1;
+      this.blocks = areBlocks;
+    }
+    
+    protected CalibrationTensors[] compute() {
+      if( this.m1 - this.m0 <= ACCUMULATION_CHUNK_SIZE ){
+        CalibrationTensors[] partial;
+        if( this.blocks ){
+          partial = new_blockTensors();
+          include_blockMeasurements( partial , this.m0 , this.m1 );
+        }else{
+          partial = new_binTensors();
+          include_measurements( partial , this.m0 , this.m1 );
+        }
+        return partial;
+      }
+      int mHalf = ( this.m0 + this.m1 )/2;
+      TensorsTask first = new TensorsTask( this.m0 , mHalf , this.blocks );
+      first.fork();
+      CalibrationTensors[] partial = new TensorsTask( mHalf , this.m1 , this.blocks ).compute();
+      CalibrationTensors[] firstPartial = first.join();
+      for(int b=0; b<firstPartial.length; b++) firstPartial[b].merge( partial[b] );
+      return firstPartial;
+    }
+    
+  }
+  
+  // updates the tensors with a data combination
+  public void include_measurement( double w , double x1 , double x2 , double x3 , double T , double y ) {
+    this.tensors.include_measurement( w , x1 , x2 , x3 , T , y );
+  }
+  
+  // reads the data file located in filePath (without extension), computing the variance in the measurements of each axis,
+  // and keeping in memory the measurements suitable for calibration
+  public void scan_dataFile( String filePath ) {
+    System.out.print( "Reading " + this.get_sensorName() + " data..." );
+    this.begin_scan();
+    if( this.values == null  ||  this.values.length < this.get_numberOfValues() ) this.values = new double[this.get_numberOfValues()];
+    if( this.reader.open( filePath + ".dat" , CACHE_RESULTS ) ){
+      int count = this.reader.read_values( this.values );
+      while(  count >= 0  &&  !Thread.currentThread().isInterrupted()  ){
+        this.scan_values( this.values , count );
+        count = this.reader.read_values( this.values );
+      }
+      this.reader.close();
+    }
+    this.check_interrupted();
+    this.end_scan( this.reader.get_digest() , 1 );
     System.out.println( " done." );
   }
   
+  // prepares the calibrator to receive the values of a data file through scan_values
+  public void begin_scan() {
+    this.profile.reset();
+    this.profile.begin( "scan" );
+    this.scannedLines = 0;
+    this.acceptedLines = 0;
+    this.dataDigest = null;
+    this.reset_data();
+    if( STREAMED_ACCUMULATION ) this.temperatureTensors = new HashMap<Long,CalibrationTensors[]>();
+    this.varX = 0.0;
+    this.varY = 0.0;
+    this.varZ = 0.0;
+    this.mNumber = -1;
+    this.Ex = 0.0;
+    this.Exx = 0.0;
+    this.Ey = 0.0;
+    this.Eyy = 0.0;
+    this.Ez = 0.0;
+    this.Ezz = 0.0;
+    this.Ndat = 0.0;
+    this.Nvar = 0.0;
+  }
+  
+  // takes the first theCount values of a line of the data file: if they are suitable for calibration, they are used to compute the variances, and the measurement is stored
+  public void scan_values( double[] theValues , int theCount ) {
+    this.scannedLines++;
+    // a line with less values than expected is ignored
+    if( theCount < this.get_numberOfValues() ) return;
+    if( this.measurement_condition( theValues ) ){
+      this.acceptedLines++;
+      double x = theValues[this.ix];
+      double y = theValues[this.iy];
+      double z = theValues[this.iz];
+      double T = theValues[this.iT];
+      double module = this.get_module( theValues );
+      this.Ndat += 1.0;
+      if( theValues[0] != this.mNumber ){
+        this.Ex /= this.Ndat;
+        this.Ey /= this.Ndat;
+        this.Ez /= this.Ndat;
+        this.varX += this.Exx/this.Ndat - this.Ex*this.Ex;
+        this.varY += this.Eyy/this.Ndat - this.Ey*this.Ey;
+        this.varZ += this.Ezz/this.Ndat - this.Ez*this.Ez;
+        this.Nvar += 1.0;
+        this.mNumber = theValues[0];
+        this.Ex = 0.0;
+        this.Ey = 0.0;
+        this.Ez = 0.0;
+        this.Exx = 0.0;
+        this.Eyy = 0.0;
+        this.Ezz = 0.0;
+        this.Ndat = 0.0;
+      }
+      this.Ex += x;
+      this.Ey += y;
+      this.Ez += z;
+      this.Exx += x*x;
+      this.Eyy += y*y;
+      this.Ezz += z*z;
+      this.data.add( x , y , z , T , module , theValues[0] );
+      if( this.temperatureTensors != null ) this.include_inTemperature( x , y , z , T , module , theValues[0] );
+    }
+  }
+  
+  // finishes the computation of the variances once all the values of the data file have been scanned. theDigest is the SHA-256 digest of the data file
+  // (or null if it is not known), needed to keep the results in the cache, and theCalibrators is the number of calibrators that scanned it at the same time
+  // (they share the time of the scan, and the profile is paused until calibrate_withScannedData)
+  public void end_scan( byte[] theDigest , int theCalibrators ) {
+    this.dataDigest = theDigest;
+    this.varX /= this.Nvar;
+    this.varY /= this.Nvar;
+    this.varZ /= this.Nvar;
+    this.profile.end( "scan" );
+    this.profile.share( "scan" , theCalibrators );
+    this.profile.pause();
+    this.profile.set( "scan" , "lines" , this.scannedLines );
+    this.profile.set( "scan" , "acceptedLines" , this.acceptedLines );
+  }
+  
+  // stores the snapshot of the calibration data: the temperature range, the variances, and the tensors of each temperature bin, and of each fold (if they were built)
+  public void save_snapshot( String path ) {
+    try{
+      DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( this.add_output( path ) ) ) );
+      int nFolds = ( this.foldTensors != null )? this.foldTensors.length : 0;
+      out.writeInt( MAX_POLYNOMIAL_ORDER );
+      out.writeInt( NUMBER_OF_TEMPERATURE_BINS );
+      out.writeInt( nFolds );
+      out.writeBoolean( NORMALIZED_TEMPERATURE );
+      out.writeDouble( this.Tmin );
+      out.writeDouble( this.Tmax );
+      out.writeDouble( this.varX );
+      out.writeDouble( this.varY );
+      out.writeDouble( this.varZ );
+      out.writeDouble( this.Nvar );
+      for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++) this.binTensors[b].save( out );
+      for(int f=0; f<nFolds; f++) this.foldTensors[f].save( out );
+      out.close();
+    }catch( Exception e ){
+      println( "Error: " + e.getMessage() );
+    }
+  }
+  
   // stores the optimal approximation to the solution
+  // the header contains the order of the polynomial, the temperature range, and the basis of the polynomials (if the temperature is normalized)
   public void save_calibration( String path ){
+    int N = this.solver.get_N();
+    double[] zt = this.solver.get_z();  // coefficients of the powers of t
+    double[] z = ( NORMALIZED_TEMPERATURE  &&  CHEBYSHEV_BASIS )? this.get_ChebyshevCoefficients( zt , N ) : zt;
     // we create the calibration file
-    PrintWriter calibrationFile = createWriter( path );
+    PrintWriter calibrationFile = createWriter( this.add_output( path ) );
     // first we specify the order of the polynomial used for calibration
-    calibrationFile.println( this.N + " " + this.Tmin + " " + this.Tmax );
+    String basis = "";
+    if( NORMALIZED_TEMPERATURE ) basis = ( CHEBYSHEV_BASIS )? " chebyshev" : " normalized";
+    calibrationFile.println( N + " " + this.Tmin + " " + this.Tmax + basis );
     // we store the calibration
-    for(int n=0; n<=this.N; n++){
-      for(int i=0; i<9; i++) calibrationFile.print( " " + this.z[n*9+i] );
+    for(int n=0; n<=N; n++){
+      for(int i=0; i<9; i++) calibrationFile.print( " " + z[n*9+i] );
       calibrationFile.println();
     }
     calibrationFile.println( "\n\n\n" );
     // we store the variance
-    calibrationFile.println( this.z[0]*this.z[0]*this.varX + " " + this.z[2]*this.z[2]*this.varY + " " + this.z[5]*this.z[5]*this.varZ );
+    calibrationFile.println( zt[0]*zt[0]*this.varX + " " + zt[2]*zt[2]*this.varY + " " + zt[5]*zt[5]*this.varZ );
     calibrationFile.println( "\n\n\n" );
     // now we store the human readable calibration
     //  1 row
     calibrationFile.print( "K = [ " );
-    calibrationFile.print( "  " + this.z[0] + " +    " );
+    calibrationFile.print( "  " + z[0] + " +    " );
     for(int i=0; i<2; i++) calibrationFile.print( "                      " + 0.0 );
     calibrationFile.println();
-    for(int n=1; n<this.N; n++){
-      calibrationFile.println( "      + " + this.z[n*9] + " +    " );
+    for(int n=1; n<N; n++){
+      calibrationFile.println( "      + " + z[n*9] + " +    " );
     }
-    if( this.N > 0 ){
-      calibrationFile.print( "      + " + this.z[this.N*9] + "      " );
+    if( N > 0 ){
+      calibrationFile.print( "      + " + z[N*9] + "      " );
     }
     calibrationFile.println( "\n" );
     //  2 row
-    for(int i=1; i<3; i++) calibrationFile.print( "        " + this.z[i] + " +    " );
+    for(int i=1; i<3; i++) calibrationFile.print( "        " + z[i] + " +    " );
     calibrationFile.println( "            " + 0.0 + "              " );
-    for(int n=1; n<this.N; n++){
-      for(int i=1; i<3; i++) calibrationFile.print( "      + " + this.z[n*9+i] + " +    " );
+    for(int n=1; n<N; n++){
+      for(int i=1; i<3; i++) calibrationFile.print( "      + " + z[n*9+i] + " +    " );
       calibrationFile.println();
     }
-    if( this.N > 0 ){
-      for(int i=1; i<3; i++) calibrationFile.print( "      + " + this.z[this.N*9+i] + "      " );
+    if( N > 0 ){
+      for(int i=1; i<3; i++) calibrationFile.print( "      + " + z[N*9+i] + "      " );
     }
     calibrationFile.println( "\n" );
     //  3 row
-    for(int i=3; i<6; i++) calibrationFile.print( "        " + this.z[i] + " +    " );
+    for(int i=3; i<6; i++) calibrationFile.print( "        " + z[i] + " +    " );
     calibrationFile.println();
-    for(int n=1; n<this.N; n++){
-      for(int i=3; i<6; i++) calibrationFile.print( "      + " + this.z[n*9+i] + " +    " );
+    for(int n=1; n<N; n++){
+      for(int i=3; i<6; i++) calibrationFile.print( "      + " + z[n*9+i] + " +    " );
       calibrationFile.println();
     }
-    if( this.N > 0 ){
-      for(int i=3; i<6; i++) calibrationFile.print( "      + " + this.z[this.N*9+i] + "      " );
+    if( N > 0 ){
+      for(int i=3; i<6; i++) calibrationFile.print( "      + " + z[N*9+i] + "      " );
     }
     calibrationFile.println( " ]\n\n\n" );
     // c
     calibrationFile.print( "c = [ " );
-    for(int i=6; i<9; i++) calibrationFile.print( "  " + this.z[i] + " +          " );
+    for(int i=6; i<9; i++) calibrationFile.print( "  " + z[i] + " +          " );
     calibrationFile.println();
-    for(int n=1; n<this.N; n++){
-      for(int i=6; i<9; i++) calibrationFile.print( "      + " + this.z[n*9+i] + " +    " );
+    for(int n=1; n<N; n++){
+      for(int i=6; i<9; i++) calibrationFile.print( "      + " + z[n*9+i] + " +    " );
       calibrationFile.println();
     }
-    if( this.N > 0 ){
-      for(int i=6; i<9; i++) calibrationFile.print( "      + " + this.z[this.N*9+i] + "      " );
+    if( N > 0 ){
+      for(int i=6; i<9; i++) calibrationFile.print( "      + " + z[N*9+i] + "      " );
     }
     calibrationFile.println( " ]" );
     calibrationFile.flush();
@@ -462,148 +1273,205 @@ public abstract class TriaxialCalibrator {
   
   // PRIVATE METHODS
   
-  //  PRIVATE METHODS FOR FILE MANIPULATION
-  
-  // https://www.programcreek.com/2011/03/java-read-a-file-line-by-line-code-example/
-  private void open_file( String path ) {
-    try{
-      this.fis = new FileInputStream( path );
-      this.br = new BufferedReader( new InputStreamReader( this.fis ) );
-    }catch( Exception e ){
-      println( "Error: " + e.getMessage() );
-    }
+  // returns the pool where the tasks of the calibration are run: the one of the current thread (see CalibrationRunner), or the common pool
+  private ForkJoinPool get_pool() {
+    ForkJoinPool pool = ForkJoinTask.getPool();
+    return ( pool != null )? pool : ForkJoinPool.commonPool();
   }
   
-  private String get_nextStringFromFile() {
-    try{
-      return this.br.readLine();
-    }catch( Exception e ){
-      println( "Error: " + e.getMessage() );
-      return null;
-    }
+  // throws a CancellationException if the current thread has been interrupted (it is checked between the phases of the calibration)
+  private void check_interrupted() {
+    if( Thread.interrupted() ) throw new CancellationException( "The calibration of the " + this.get_sensorName() + " " + this.sID + " was interrupted." );
   }
   
-  private double[] get_valuesFromString( String strLine ) {
-    if( strLine != null ){
-      String[] strValues = strLine.split(" ");
-      double[] theValues = new double[strValues.length];
-      try{
-        for(int i=0; i<strValues.length; i++) theValues[i] = Float.parseFloat( strValues[i] );
-      }catch( Exception e ){  // if one of them can not be interpreted as a number, we return null
-        return null;
-      }
-      return theValues;
-    }else{
-      return null;
-    }
-  }
-  
-  private double[] get_nextValuesFromFile() {
-    return this.get_valuesFromString( this.get_nextStringFromFile() );
-  }
+  //  PRIVATE METHODS FOR FILE MANIPULATION
   
-  private void close_file() {
+  // stores in the cache the results of calibrating the data file fileName stored in dataPath (the files written by the calibration, see add_output)
+  private void store_inCache( String dataPath , String fileName ) {
+    String fPath = dataPath + this.sID + this.get_sensorType() + "_" + fileName;
+    // every output starts with fPath (the ones of the provisional calibration with fPath_provisional), so it is stored by its suffix
+    ArrayList<String> written = new ArrayList<String>();
+    for(int i=0; i<this.outputs.size(); i++){
+      String suffix = this.outputs.get( i ).substring( fPath.length() );
+      if( !written.contains( suffix ) ) written.add( suffix );
+    }
     try{
-      this.br.close();
-      this.fis.close();
+      String key = CalibrationCache.get_key( dataPath + fileName + ".dat" , this.get_configuration() );
+      new CalibrationCache( dataPath + CACHE_FOLDER , CACHE_MAX_SIZE ).store( key , this.dataDigest , fPath , written.toArray( new String[0] ) );
     }catch( Exception e ){
       println( "Error: " + e.getMessage() );
     }
   }
   
-  // creates a file with a convenient data layout for the selected sensor
-  private int prepare_dataFile( String pathIn , String pathOut ) {
-    System.out.print( "Preparing " + this.get_sensorName() + " data file..." );
-    // first, we take the data of sID from the main file
-    int Ndat = 0;
-    PrintWriter calibrationFile = createWriter( pathOut + ".dat" );
-    this.open_file( pathIn + ".dat" );
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      try{
-        if( this.measurement_condition( theValues ) ){
-          calibrationFile.println( theValues[this.ix] + " " + theValues[this.iy] + " " + theValues[this.iz] +
-                             " " + theValues[this.iT] +
-                             " " + this.get_module( theValues ) );
-          Ndat++;
-        }
-      }catch( Exception e ){
-        //println( "Exception: prepare_accelerometerFile: it could be due to a line with less values than expected." );
-        //println( "Error: " + e.getMessage() );
-      }
-      theValues = this.get_nextValuesFromFile();
-    }
-    this.close_file();
-    calibrationFile.flush();
-    calibrationFile.close();
-    System.out.println( " done." );
-    return Ndat;
+  // adds thePath to the outputs of the calibration, and returns it
+  private String add_output( String thePath ) {
+    this.outputs.add( thePath );
+    return thePath;
   }
   
-  // combines all the data files created with "prepare_dataFile" to perform the overall calibration with "calibrate_withAll"
+  // combines in memory all the data files created with "generate_calibratedData" to perform the overall calibration with "calibrate_withAll"
+  // (text data files are only read if there is no binary data file with the same name)
   private String combine_files( String dataPath ) {
     // first, we get the files for this sensor
     File folder = new File( dataPath );
     File[] files = folder.listFiles();
-    // then, we combine the measurements into a single file
+    // then, we combine the measurements
     String sensorName = this.sID + this.get_sensorType();
     String fPath = dataPath + sensorName;
-    PrintWriter calibrationFile = createWriter( fPath + ".dat" );
+    this.reset_data();
     for(int i=0; i<files.length; i++){
+      this.check_interrupted();
       String fileName = files[i].getName().replace( dataPath , "" );
-      if(  fileName.contains( sensorName + "_" )  &&  fileName.endsWith( ".dat" )  ){
-        this.open_file( dataPath + fileName );
-        String nextString;
-        while( ( nextString = this.get_nextStringFromFile() ) != null ){
-          calibrationFile.println( nextString );
+      if(  fileName.contains( sensorName + "_" )  &&  fileName.endsWith( ".bdat" )  ){
+        ColumnarDataFile theFile = new ColumnarDataFile();
+        if(  theFile.open( dataPath + fileName )  &&  theFile.get_numberOfColumns() >= 5  ){
+          for(int r=0; r<theFile.get_numberOfRows(); r++){
+            this.data.add( theFile.get( 0 , r ) , theFile.get( 1 , r ) , theFile.get( 2 , r ) , theFile.get( 3 , r ) , theFile.get( 4 , r ) , i );  // the index of the file takes the place of the measurement number
+          }
+        }
+        theFile.close();
+      }else if(  fileName.contains( sensorName + "_" )  &&  fileName.endsWith( ".dat" )  &&  !new File( dataPath + fileName.replace( ".dat" , ".bdat" ) ).exists()  ){
+        if( this.reader.open( dataPath + fileName ) ){
+          double[] theValues = new double[5];  // only the uncalibrated values are read
+          int count = this.reader.read_values( theValues );
+          while( count >= 0 ){
+            if( count >= theValues.length ) this.data.add( theValues[0] , theValues[1] , theValues[2] , theValues[3] , theValues[4] , i );  // the index of the file takes the place of the measurement number
+            count = this.reader.read_values( theValues );
+          }
+          this.reader.close();
         }
-        this.close_file();
       }
     }
-    calibrationFile.flush();
-    calibrationFile.close();
     return fPath;
   }
   
-  // sets the intervals for the calibration subset and the validation subset using the PROPORTION_OF_CALIBRATION_DATA
-  private void set_intervalsT( String filePath ) {
-    System.out.print( "  Setting calibration data..." );
-    // first, we find the maximum and minimum temperature
+  // merges the snapshots (.sst files) of this sensor stored in dataPath. The tensors are rebased to the temperature variable of the merged range before
+  // they are merged by weight. Returns false if there are no snapshots
+  private boolean merge_snapshots( String dataPath ) {
+    String sensorName = this.sID + this.get_sensorType();
+    File[] files = new File( dataPath ).listFiles();
+    if( files == null ) return false;
+    // first, we read the snapshots
+    ArrayList<double[]> headers = new ArrayList<double[]>();
+    ArrayList<CalibrationTensors[]> snapshots = new ArrayList<CalibrationTensors[]>();  // tensors of each bin
+    ArrayList<CalibrationTensors[]> snapshotFolds = new ArrayList<CalibrationTensors[]>();  // tensors of each fold (or null)
+    for(int i=0; i<files.length; i++){
+      String fileName = files[i].getName();
+      if(  fileName.startsWith( sensorName + "_" )  &&  fileName.endsWith( ".sst" )  ){
+        try{
+          DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( files[i] ) ) );
+          int maxN = in.readInt();
+          int nBins = in.readInt();
+          int nFolds = in.readInt();
+          if(  maxN == MAX_POLYNOMIAL_ORDER  &&  nBins == NUMBER_OF_TEMPERATURE_BINS  &&  ( nFolds == 0  ||  nFolds == NUMBER_OF_FOLDS )  ){
+            double[] header = new double[]{ ( in.readBoolean() )? 1.0 : 0.0 , in.readDouble() , in.readDouble() , in.readDouble() , in.readDouble() , in.readDouble() , in.readDouble() };
+            CalibrationTensors[] theBins = new CalibrationTensors[NUMBER_OF_TEMPERATURE_BINS];
+            for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++){
+              theBins[b] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+              theBins[b].load( in );
+            }
+            CalibrationTensors[] theFolds = ( nFolds > 0 )? new CalibrationTensors[NUMBER_OF_FOLDS] : null;
+            for(int f=0; f<nFolds; f++){
+              theFolds[f] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+              theFolds[f].load( in );
+            }
+            headers.add( header );
+            snapshots.add( theBins );
+            snapshotFolds.add( theFolds );
+          }else{
+            System.out.println( "Snapshot " + fileName + " was built with other parameters." );
+          }
+          in.close();
+        }catch( Exception e ){
+          println( "Error: " + e.getMessage() );
+        }
+      }
+    }
+    if( snapshots.size() == 0 ) return false;
+    System.out.print( "Merging " + snapshots.size() + " " + this.get_sensorName() + " snapshots..." );
+    // then, the temperature range and the variances of the merged data
     this.Tmin = Double.MAX_VALUE;
     this.Tmax = -Double.MAX_VALUE;
-    this.open_file( filePath + ".dat" );
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      this.Tmin = ( this.Tmin < theValues[3] )? this.Tmin : theValues[3];
-      this.Tmax = ( this.Tmax > theValues[3] )? this.Tmax : theValues[3];
-      // we take the next values
-      theValues = this.get_nextValuesFromFile();
-    }
-    //System.out.println( this.Tmin + " " + this.Tmax );
-    this.close_file();
-    // we compute the temperature range
-    // extrapolation
-    double Tmin1 = 0.5*( this.Tmin + this.Tmax ) - 0.5*PROPORTION_OF_CALIBRATION_DATA*( this.Tmax - this.Tmin );
-    double Tmax1 = 0.5*( this.Tmin + this.Tmax ) + 0.5*PROPORTION_OF_CALIBRATION_DATA*( this.Tmax - this.Tmin );
-    //double Tmin1 = this.Tmin + 0.5*(1.0-this.pCalibrationData)*(this.Tmax-this.Tmin);
-    //double Tmax1 = this.Tmax - 0.5*(1.0-this.pCalibrationData)*(this.Tmax-this.Tmin);
-    this.intervalsT = new double[]{ Tmin1 , Tmax1 };
-    // interpolation
-//    double Tmin1 = this.Tmin;
-//    double Tmax1 = 0.5*( this.Tmin + this.Tmax ) - 0.5*(1.0-pCalibrationData)*(this.Tmax-this.Tmin);
-//    double Tmin2 = 0.5*( this.Tmin + this.Tmax ) + 0.5*(1.0-pCalibrationData)*(this.Tmax-this.Tmin);
-//    double Tmax2 = this.Tmax;
-//    this.intervalsT = new double[]{ Tmin1 , Tmax1 , Tmin2 , Tmax2 };
-    // interpolation and extrapolation
-//    double Tmin1 = Tmin + 0.333*(1.0-pCalibrationData)*(Tmax-Tmin);
-//    double Tmax1 = 0.5*(Tmax+Tmin) - 0.5*0.333*(1.0-pCalibrationData)*(Tmax-Tmin);
-//    double Tmin2 = 0.5*(Tmax+Tmin) + 0.5*0.333*(1.0-pCalibrationData)*(Tmax-Tmin);
-//    double Tmax2 = Tmax - 0.333*(1.0-pCalibrationData)*(Tmax-Tmin);
-//    this.intervalsT = new double[]{ Tmin1 , Tmax1 , Tmin2 , Tmax2 };
+    this.varX = 0.0;
+    this.varY = 0.0;
+    this.varZ = 0.0;
+    this.Nvar = 0.0;
+    for(int i=0; i<headers.size(); i++){
+      double[] header = headers.get( i );
+      this.Tmin = Math.min( this.Tmin , header[1] );
+      this.Tmax = Math.max( this.Tmax , header[2] );
+      this.varX += header[6]*header[3];
+      this.varY += header[6]*header[4];
+      this.varZ += header[6]*header[5];
+      this.Nvar += header[6];
+    }
+    if( this.Nvar > 0.0 ){
+      this.varX /= this.Nvar;
+      this.varY /= this.Nvar;
+      this.varZ /= this.Nvar;
+    }
+    // and finally the tensors of each bin, and of each fold (only if every snapshot has them). Each bin of a snapshot goes to the merged bin of its center,
+    // and the variable of each snapshot, t = s*( T - c ), is changed to t' = s'*( T - c' ) = (s'/s)*t + s'*( c - c' )
+    double s1 = ( NORMALIZED_TEMPERATURE  &&  this.Tmax > this.Tmin )? 2.0/( this.Tmax - this.Tmin ) : 1.0;
+    double c1 = ( NORMALIZED_TEMPERATURE )? 0.5*( this.Tmax + this.Tmin ) : 0.0;
+    this.binTensors = new CalibrationTensors[NUMBER_OF_TEMPERATURE_BINS];
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++) this.binTensors[b] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    boolean folds = !snapshotFolds.contains( null );
+    this.foldTensors = null;
+    if( folds ){
+      this.foldTensors = new CalibrationTensors[NUMBER_OF_FOLDS];
+      for(int f=0; f<NUMBER_OF_FOLDS; f++) this.foldTensors[f] = new CalibrationTensors( MAX_POLYNOMIAL_ORDER );
+    }
+    for(int i=0; i<snapshots.size(); i++){
+      double[] header = headers.get( i );
+      boolean normalized = ( header[0] == 1.0 );
+      double s0 = ( normalized  &&  header[2] > header[1] )? 2.0/( header[2] - header[1] ) : 1.0;
+      double c0 = ( normalized )? 0.5*( header[2] + header[1] ) : 0.0;
+      double width = ( header[2] - header[1] )/NUMBER_OF_TEMPERATURE_BINS;
+      for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++){
+        CalibrationTensors theBin = snapshots.get( i )[b];
+        if( theBin.W == 0.0 ) continue;
+        theBin.rebase( s1/s0 , s1*( c0 - c1 ) );
+        this.binTensors[ this.get_bin( header[1] + ( b + 0.5 )*width ) ].merge( theBin );
+      }
+      if( !folds ) continue;
+      for(int f=0; f<NUMBER_OF_FOLDS; f++){
+        CalibrationTensors theFold = snapshotFolds.get( i )[f];
+        theFold.rebase( s1/s0 , s1*( c0 - c1 ) );
+        this.foldTensors[f].merge( theFold );
+      }
+    }
     System.out.println( " done." );
+    return true;
+  }
+  
+  // sets the intervals for the calibration subset and the validation subset using the PROPORTION_OF_CALIBRATION_DATA, and the split strategy
+  private void set_intervalsT( int strategy ) {
+    System.out.print( "  Setting calibration data..." );
+    double Tc = 0.5*( this.Tmin + this.Tmax );
+    double DT = this.Tmax - this.Tmin;
+    double pV = 1.0 - PROPORTION_OF_CALIBRATION_DATA;
+    if( strategy == INTERPOLATION ){
+      this.intervalsT = new double[]{ this.Tmin , Tc - 0.5*pV*DT , Tc + 0.5*pV*DT , this.Tmax };
+    }else if( strategy == INTERPOLATION_AND_EXTRAPOLATION ){
+      this.intervalsT = new double[]{ this.Tmin + pV*DT/3.0 , Tc - 0.5*pV*DT/3.0 , Tc + 0.5*pV*DT/3.0 , this.Tmax - pV*DT/3.0 };
+    }else{
+      this.intervalsT = new double[]{ Tc - 0.5*PROPORTION_OF_CALIBRATION_DATA*DT , Tc + 0.5*PROPORTION_OF_CALIBRATION_DATA*DT };
+    }
+    // the intervals are snapped to the edges of the temperature bins
+    this.set_calibrationBins();
+    System.out.println( " done." );
+  }
+  
+  // snaps the temperature intervals to the edges of the temperature bins, and sets the bins inside them
+  private void set_calibrationBins() {
+    double width = ( this.Tmax - this.Tmin )/NUMBER_OF_TEMPERATURE_BINS;
+    if( width > 0.0 ){
+      for(int k=0; k<this.intervalsT.length; k++) this.intervalsT[k] = this.Tmin + Math.round( ( this.intervalsT[k] - this.Tmin )/width )*width;
+    }
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++) this.calibrationBins[b] = this.is_T_inside( this.Tmin + ( b + 0.5 )*width );
   }
   
-  // returns true if T is inside of the calibration data
   private boolean is_T_inside( double T ) {
     boolean inside = false;
     for(int k=0; k<this.intervalsT.length; k+=2){
@@ -618,322 +1486,118 @@ public abstract class TriaxialCalibrator {
   
   //  PRIVATE METHODS FOR DATA ANALYSIS
   
-  // gets the matrix A
-  private double[][] get_A( double T ) {
-    double[][] AT = new double[3][4];
-    double Tn = 1.0;
-    for(int n=0; n<=this.N; n++){
-      int n9 = 9*n;
-      AT[0][0] += this.z[n9]*Tn;     AT[0][1] += 0.0;               AT[0][2] += 0.0;               AT[0][3] += this.z[n9+6]*Tn;
-      AT[1][0] += this.z[n9+1]*Tn;   AT[1][1] += this.z[n9+2]*Tn;   AT[1][2] += 0.0;               AT[1][3] += this.z[n9+7]*Tn;
-      AT[2][0] += this.z[n9+3]*Tn;   AT[2][1] += this.z[n9+4]*Tn;   AT[2][2] += this.z[n9+5]*Tn;   AT[2][3] += this.z[n9+8]*Tn;
-      Tn *= T;
-    }
-    return AT;
+  // gets the temperature used in the polynomials: the normalized temperature t (in [-1,1]) if NORMALIZED_TEMPERATURE, or T otherwise
+  private double get_t( double T ) {
+    if( !NORMALIZED_TEMPERATURE ) return T;
+    double scale = ( this.Tmax > this.Tmin )? 2.0/( this.Tmax - this.Tmin ) : 1.0;
+    return ( T - 0.5*( this.Tmax + this.Tmin ) )*scale;
   }
   
-  // gets the corrected vector with the optimal approximation to the solution
-  private double[] get_correctedVector( double x , double y , double z , double T ) {
-    double[][] AT = this.get_A( T );
-    return new double[]{ AT[0][0]*x + AT[0][1]*y + AT[0][2]*z + AT[0][3] ,
-                         AT[1][0]*x + AT[1][1]*y + AT[1][2]*z + AT[1][3] ,
-                         AT[2][0]*x + AT[2][1]*y + AT[2][2]*z + AT[2][3] };
-  }
-  
-  // gets the corrected module with the optimal approximation to the solution
-  private double get_correctedModule( double x , double y , double z , double T ) {
-    double[] vc = this.get_correctedVector( x , y , z , T );
-    return Math.sqrt( vc[0]*vc[0] + vc[1]*vc[1] + vc[2]*vc[2] );
+  // converts the coefficients of the powers of t in z into coefficients of the Chebyshev polynomials of t ( T_0 = 1 , T_1 = t , T_(k+1) = 2*t*T_k - T_(k-1) )
+  private double[] get_ChebyshevCoefficients( double[] z , int N ) {
+    double[] c = new double[9*(N+1)];
+    // Chebyshev coefficients of t^n (starting with t^0 = T_0)
+    double[] tn = new double[N+2];
+    tn[0] = 1.0;
+    for(int n=0; n<=N; n++){
+      for(int k=0; k<=n; k++){
+        for(int i=0; i<9; i++) c[k*9+i] += z[n*9+i]*tn[k];
+      }
+      // t^(n+1) = t*t^n, where t*T_0 = T_1 and t*T_k = ( T_(k+1) + T_(k-1) )/2
+      double[] tn1 = new double[N+2];
+      tn1[1] = tn[0];
+      for(int k=1; k<=n; k++){
+        tn1[k+1] += 0.5*tn[k];
+        tn1[k-1] += 0.5*tn[k];
+      }
+      tn = tn1;
+    }
+    return c;
   }
   
   // computes the MAE and the variances in the calibration data and the validation data with the default calibration (the one presented in the datasheet)
-  protected double[] compute_error0( String filePath , double sensitivity ) {
+  // (the errors of each temperature bin are kept in binErrors0)
+  protected double[] compute_error0( double sensitivity ) {
     System.out.print( "  Computing default " + this.get_sensorName() + " error..." );
-    this.open_file( filePath + ".dat" );
-    double serrC = 0.0;
-    double serr2C = 0.0;
-    int nmC = 0;
-    double serrV = 0.0;
-    double serr2V = 0.0;
-    int nmV = 0;
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      double y = Math.abs( theValues[4] );
-      double x = sensitivity*Math.sqrt( theValues[0]*theValues[0] + theValues[1]*theValues[1] + theValues[2]*theValues[2] );
-      double err = Math.abs( y - x );
-      if( this.is_T_inside( theValues[3] ) ){
-        serrC += err;
-        serr2C += err*err;
-        nmC++;
-      }else{
-        serrV += err;
-        serr2V += err*err;
-        nmV++;
-      }
-      theValues = this.get_nextValuesFromFile();
+    this.binErrors0 = new double[NUMBER_OF_TEMPERATURE_BINS][3];
+    for(int m=0; m<this.data.size(); m++){
+      double y = Math.abs( this.data.get_module( m ) );
+      double x = sensitivity*Math.sqrt( this.data.get_x( m )*this.data.get_x( m ) + this.data.get_y( m )*this.data.get_y( m ) + this.data.get_z( m )*this.data.get_z( m ) );
+      this.add_error( this.binErrors0 , this.data.get_T( m ) , Math.abs( y - x ) );
     }
-    this.close_file();
-    double merrC = serrC/nmC;
-    double merrV = serrV/nmV;
-    double[] toReturn = new double[]{ merrC , Math.sqrt( Math.abs( serr2C/nmC - merrC*merrC ) ) , merrV , Math.sqrt( Math.abs( serr2V/nmV - merrV*merrV ) ) };  // we take absolute value to get rid of rounding errors
     System.out.println( " done." );
-    return toReturn;
+    return this.get_errors( this.binErrors0 );
   }
   
-  // computes the MAE and the variances in the calibration data and the validation data with the optimal approximation to the solution
-  private double[] compute_error( String filePath ) {
-    System.out.print( "    computing calibrated " + this.get_sensorName() + " error..." );
-    this.open_file( filePath + ".dat" );
+  // computes the MAE and the variances in the calibration data and the validation data with the optimal approximation to the solution of theSolver
+  private double[] compute_error( CalibrationSolver theSolver ) {
+    double[][] binErrors = new double[NUMBER_OF_TEMPERATURE_BINS][3];
+    for(int m=0; m<this.data.size(); m++){
+      double y = Math.abs( this.data.get_module( m ) );
+      double x = theSolver.get_correctedModule( this.data.get_x( m ) , this.data.get_y( m ) , this.data.get_z( m ) , this.get_t( this.data.get_T( m ) ) );
+      this.add_error( binErrors , this.data.get_T( m ) , Math.abs( y - x ) );
+    }
+    return this.get_errors( binErrors );
+  }
+  
+  // adds the error of a measurement made at temperature T to the errors of its temperature bin
+  private void add_error( double[][] binErrors , double T , double err ) {
+    double[] theBin = binErrors[ this.get_bin( T ) ];
+    theBin[0] += 1.0;
+    theBin[1] += err;
+    theBin[2] += err*err;
+  }
+  
+  // gets the MAE and the variances in the calibration data and the validation data, summing the errors of the temperature bins
+  private double[] get_errors( double[][] binErrors ) {
     double serrC = 0.0;
     double serr2C = 0.0;
-    int nmC = 0;
+    double nmC = 0.0;
     double serrV = 0.0;
     double serr2V = 0.0;
-    int nmV = 0;
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      double y = Math.abs( theValues[4] );
-      double x = this.get_correctedModule( theValues[0] , theValues[1] , theValues[2] , theValues[3] );
-      double err = Math.abs( y - x );
-      if( this.is_T_inside( theValues[3] ) ){
-        serrC += err;
-        serr2C += err*err;
-        nmC++;
+    double nmV = 0.0;
+    for(int b=0; b<NUMBER_OF_TEMPERATURE_BINS; b++){
+      if( this.calibrationBins[b] ){
+        nmC += binErrors[b][0];
+        serrC += binErrors[b][1];
+        serr2C += binErrors[b][2];
       }else{
-        serrV += err;
-        serr2V += err*err;
-        nmV++;
+        nmV += binErrors[b][0];
+        serrV += binErrors[b][1];
+        serr2V += binErrors[b][2];
       }
-      theValues = this.get_nextValuesFromFile();
     }
-    this.close_file();
     double merrC = serrC/nmC;
     double merrV = serrV/nmV;
     double[] toReturn = new double[]{ merrC , Math.sqrt( Math.abs( serr2C/nmC - merrC*merrC ) ) , merrV , Math.sqrt( Math.abs( serr2V/nmV - merrV*merrV ) ) };  // we take absolute value to get rid of rounding errors
-    System.out.println( " done." );
     return toReturn;
   }
   
-  // stores the calibrated data with the optimal approximation to the solution
+  // stores the calibrated data with the optimal approximation to the solution in the binary columnar file (.bdat) with columns x y z T |y| xc yc zc
   private void generate_calibratedData( String filePath ) {
     System.out.print( " Generating calibrated data..." );
-    PrintWriter newFile = createWriter( filePath + ".new" );
-    this.open_file( filePath + ".dat" );
-    double[] theValues = this.get_nextValuesFromFile();
-    while( theValues != null ){
-      double x = theValues[0];
-      double y = theValues[1];
-      double z = theValues[2];
-      double T = theValues[3];
-      double[] vc = this.get_correctedVector( x , y , z , T );
-      for(int i=0; i<5; i++){
-        newFile.print( theValues[i] + " " );
-      }
-      newFile.println( vc[0] + " " + vc[1] + " " + vc[2] );
-      theValues = this.get_nextValuesFromFile();
-    }
-    this.close_file();
-    newFile.flush();
-    newFile.close();
-    // now we delete the old file
-    File fOld = new File( filePath + ".dat" );
-    fOld.delete();
-    // and we rename the new one
-    File fNew = new File( filePath + ".new" );
-    fNew.renameTo( fOld );
-    System.out.println( " done." );
-  }
-  
-  
-  //  PRIVATE METHODS FOR CALIBRATION
-  
-  // updates the matrix A with the current approximation to the solution
-  private void update_A(){
-    for(int n=0; n<=this.N; n++){
-      int n9 = 9*n;
-      this.A[n][0][0] = this.zk[n9];     this.A[n][0][1] = 0.0;             this.A[n][0][2] = 0.0;             this.A[n][0][3] = this.zk[n9+6];
-      this.A[n][1][0] = this.zk[n9+1];   this.A[n][1][1] = this.zk[n9+2];   this.A[n][1][2] = 0.0;             this.A[n][1][3] = this.zk[n9+7];
-      this.A[n][2][0] = this.zk[n9+3];   this.A[n][2][1] = this.zk[n9+4];   this.A[n][2][2] = this.zk[n9+5];   this.A[n][2][3] = this.zk[n9+8];
+    int size = this.data.size();
+    double[][] columns = new double[8][size];
+    for(int m=0; m<size; m++){
+      columns[0][m] = this.data.get_x( m );
+      columns[1][m] = this.data.get_y( m );
+      columns[2][m] = this.data.get_z( m );
+      columns[3][m] = this.data.get_T( m );
+      columns[4][m] = this.data.get_module( m );
+      double[] vc = this.solver.get_correctedVector( columns[0][m] , columns[1][m] , columns[2][m] , this.get_t( columns[3][m] ) );
+      columns[5][m] = vc[0];
+      columns[6][m] = vc[1];
+      columns[7][m] = vc[2];
     }
-  }
-  
-  // gets a term of the matrix J^T*W*( y^2 - f )
-  private double get_JTWdy( int g , int a , int b ) {
-    double sum = 0.0;
-    for(int n2=0; n2<=this.N; n2++){
-      int nY = n2+g;
-      for(int j2=0; j2<4; j2++){
-        sum += this.A[n2][a][j2]*this.Y2[nY][j2][b];
-      }
-      for(int n=0; n<=this.N; n++){
-        for(int l=0; l<=this.N; l++){
-          int nX = nY+n+l;
-          for(int i=0; i<3; i++){
-            for(int j1=0; j1<4; j1++){
-              for(int k=0; k<4; k++){
-                for(int j2=0; j2<4; j2++){
-                  sum -= this.A[n2][a][j2]*this.A[n][i][j1]*this.A[l][i][k]*this.X4[nX][j2][b][j1][k];
-                }  // j2
-              }  // k
-            }  // j
-          }  // i
-        }  // l
-      }  // n
-    }  // n2
-    return 2.0*sum;
-  }
-  
-  // gets the matrix J^T*W*( y^2 - f )
-  private double[] get_JTWdy(){
-    // now we compute the matrix J^T*W*dy
-    double[] JTWdy = new double[9*(this.N+1)];
-    int iJ = 0;
-    for(int g=0; g<=this.N; g++){
-      // K part
-      for(int a=0; a<3; a++){
-        for(int b=0; b<=a; b++){
-          JTWdy[ iJ++ ] = this.get_JTWdy( g , a , b );
-        }  // end b
-      }  // end a
-      // c part
-      for(int a=0; a<3; a++){
-        JTWdy[ iJ++ ] = this.get_JTWdy( g , a , 3 );
-      }  // end a
-    }  // end g
-    return JTWdy;
-  }  // get_JTWdy()
-  
-  
-  // gets a term of the matrix J^T*W*J
-  private double get_JTWJ( int g1 , int a1 , int b1 , int g2 , int a2 , int b2 ) {
-    double sum = 0.0;
-    for(int n1=0; n1<=this.N; n1++){
-      for(int n2=0; n2<=this.N; n2++){
-        int nX = n1+g1+n2+g2;
-        for(int j1=0; j1<4; j1++){
-          for(int j2=0; j2<4; j2++){
-            sum += this.A[n1][a1][j1]*this.A[n2][a2][j2]*this.X4[nX][j1][b1][j2][b2];
-          }  // j2
-        }  // j
-      }  // n2
-    }  // n
-    return 4.0*sum;
-  }
-  
-  // gets the matrix J^T*W*J
-  private double[][] get_JTWJ(){
-    // now we compute the matrix J^T*W*J
-    double[][] JTWJ = new double[9*(this.N+1)][9*(this.N+1)];
-    int iJ1 = 0;
-    for(int g=0; g<=this.N; g++){
-      // K# part
-      for(int a=0; a<3; a++){
-        for(int b=0; b<=a; b++){
-          int iJ2 = 0;
-          for(int g2=0; g2<=this.N; g2++){
-            // K part
-            for(int a2=0; a2<3; a2++){
-              for(int b2=0; b2<=a2; b2++){
-                JTWJ[iJ1][iJ2] = this.get_JTWJ( g , a , b , g2 , a2 , b2 );
-                iJ2++;
-              }
-            }
-            // c part
-            for(int a2=0; a2<3; a2++){
-              JTWJ[iJ1][iJ2] = this.get_JTWJ( g , a , b , g2 , a2 , 3 );
-              iJ2++;
-            }
-          }
-          iJ1++;
-        }
-      }
-      // c# part
-      for(int a=0; a<3; a++){
-        int iJ2 = 0;
-        for(int g2=0; g2<=this.N; g2++){
-          // K part
-          for(int a2=0; a2<3; a2++){
-            for(int b2=0; b2<=a2; b2++){
-              JTWJ[iJ1][iJ2] = this.get_JTWJ( g , a , 3 , g2 , a2 , b2 );
-              iJ2++;
-            }
-          }
-          // c part
-          for(int a2=0; a2<3; a2++){
-            JTWJ[iJ1][iJ2] = this.get_JTWJ( g , a , 3 , g2 , a2 , 3 );
-            iJ2++;
-          }
-        }
-        iJ1++;
-      }
-    }
-    return JTWJ;
-  }  // end get_JTWJ()
-  
-  
-  // Method: Cholesky
-  // performs the Cholesky decomposition of a positive definite matrix ( S = L*L' )
-  // inputs:
-  //  S: NxN positive definite matrix to be decomposed (must be stored by columns)
-  // outputs:
-  //  S: the lower triangular matrix L (6x6) is overwritten in S (is stored by columns)
-  private void Cholesky( double[][] S , int n ){
-    // for each column
-    for(int j=0; j<n; j++){
-      double sum = 0.0;  //sum for the diagonal term
-      // we first fill with 0.0 until diagonal
-      for(int i=0; i<j; i++){
-        S[i][j] = 0.0;
-        //we can compute this sum at the same time
-        sum += S[j][i]*S[j][i];
-      }
-      // now we compute the diagonal term
-      S[j][j] = Math.sqrt( S[j][j] - sum );
-      // finally we compute the terms below the diagonal
-      for(int i=j+1; i<n; i++){
-        //first the sum
-        sum = 0.0;
-        for(int k=0; k<j; k++){
-          sum += S[i][k]*S[j][k];
-        }
-        //after the non-diagonal term
-        S[i][j] = ( S[i][j] - sum )/S[j][j];
-      }
-    }//end j
-    
-    return;
-  }
-  
-  
-  // Method: solve
-  // solves the system of linear equations  K*S = M  for K
-  // inputs:
-  //  S: nxn positive definite matrix
-  //  M: 1xn matrix stored by rows
-  // outputs:
-  //  M: K (1xn) is stored in the M memory space
-  private void solve( double[][] S , double[] M , int n ){
-    // we first compute the Cholesky decomposition for transform the system from  K*S = M  into K*L*L' = M
-    this.Cholesky( S , n );
-    
-    // first we solve (y*L' = M)
-    for(int j=0; j<n; j++){
-      double sum = M[j];
-      for(int k=0; k<j; k++){
-        sum -= M[k]*S[j][k];
-      }
-      M[j] = sum/S[j][j];
-    }
-    // now we solve (Ki*L = y)
-    for(int j=n-1; j>-1; j--){
-      double sum = M[j];
-      for(int k=j+1; k<n; k++){
-        sum -= M[k]*S[k][j];
-      }
-      M[j] = sum/S[j][j];
+    try{
+      ColumnarDataFile.write( this.add_output( filePath + ".bdat" ) , columns , size );
+    }catch( Exception e ){
+      println( "Error: " + e.getMessage() );
+      return;
     }
-    
-    return;
+    // the text file keeps the layout used by the plotting scripts
+    if( EXPORT_TEXT_DATA ) ColumnarDataFile.convert_toText( filePath + ".bdat" , this.add_output( filePath + ".dat" ) );
+    System.out.println( " done." );
   }
   
 }
\ No newline at end of file
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package calibration;
+
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+// benchmark of the kernels of each Levenberg-Marquardt iteration of CalibrationSolver: J^T*W*dy, J^T*W*J, and the solution of the damped system.
+// They are private to the solver, so they are measured together through compute_step, which does the work of one iteration
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+public class KernelsBenchmark {
+  
+  // PARAMETERS
+  private static final int MAX_N = 5;
+  private static final double DAMPING = 1.0e-3;  // relative to the diagonal of J^T*W*J (like the first Levenberg-Marquardt iteration)
+  @Param({ "0" , "1" , "2" , "3" , "4" , "5" })
+  public int N;  // polynomial order of the calibration
+  @Param({ "100000" })
+  public int measurements;
+  
+  // VARIABLES
+  private CalibrationSolver solver;
+  
+  
+  @Setup( Level.Trial )
+  public void setup() {
+    SyntheticData data = new SyntheticData( this.measurements , 1 );
+    CalibrationTensors tensors = new CalibrationTensors( MAX_N );
+    data.include_in( tensors );
+    // the steps are computed from the solution of order N
+    this.solver = new CalibrationSolver( MAX_N , tensors );
+    this.solver.compute_calibration( this.N , null );
+    // we check that the damped system can be solved, so the benchmark does not measure operations with NaN
+    double[] dz = this.solver.compute_step( DAMPING );
+    for(int i=0; i<9*(this.N+1); i++){
+      if( Double.isNaN( dz[i] ) ) throw new IllegalStateException( "J^T*W*J is not positive definite for N=" + this.N );
+    }
+  }
+  
+  @Benchmark
+  public double[] step() {
+    return this.solver.compute_step( DAMPING );
+  }
+  
+}
\ No newline at end of file
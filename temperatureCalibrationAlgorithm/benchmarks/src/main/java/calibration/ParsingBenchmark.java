@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package calibration;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+// benchmarks of the reading of the data files: the text files parsed by DataFileReader (the path of scan_dataFile),
+// and the binary columnar files read by ColumnarDataFile (the path of combine_files). The binary file is opened once, because its mappings
+// are only released when they are garbage collected (opening it in each invocation would exhaust the memory mappings of the process)
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+public class ParsingBenchmark {
+  
+  // PARAMETERS
+  private static final int NUMBER_OF_VALUES = 9;  // values parsed in each line (ID, sensor ID, accelerometer, gyroscope, and temperature)
+  @Param({ "100000" })
+  public int measurements;
+  
+  // VARIABLES
+  private File textFile;
+  private File binaryFile;
+  private DataFileReader reader;
+  private double[] values;
+  private ColumnarDataFile columnarFile;
+  
+  
+  @Setup( Level.Trial )
+  public void setup() throws IOException {
+    SyntheticData data = new SyntheticData( this.measurements , 1 );
+    this.textFile = File.createTempFile( "synthetic" , ".dat" );
+    this.binaryFile = File.createTempFile( "synthetic" , ".bdat" );
+    data.write_textFile( this.textFile );
+    data.write_binaryFile( this.binaryFile );
+    this.reader = new DataFileReader();
+    this.values = new double[NUMBER_OF_VALUES];
+    this.columnarFile = new ColumnarDataFile();
+    if( !this.columnarFile.open( this.binaryFile.getPath() ) ) throw new IllegalStateException( "The binary file can not be opened." );
+  }
+  
+  @TearDown( Level.Trial )
+  public void tearDown() {
+    this.columnarFile.close();
+    this.textFile.delete();
+    this.binaryFile.delete();
+  }
+  
+  @Benchmark
+  public double read_textFile() {
+    double sum = 0.0;
+    if( !this.reader.open( this.textFile.getPath() ) ) throw new IllegalStateException( "The text file can not be opened." );
+    int count = this.reader.read_values( this.values );
+    while( count >= 0 ){
+      sum += this.values[2] + this.values[3] + this.values[4] + this.values[8];
+      count = this.reader.read_values( this.values );
+    }
+    this.reader.close();
+    return sum;
+  }
+  
+  @Benchmark
+  public double read_binaryFile() {
+    double sum = 0.0;
+    ColumnarDataFile file = this.columnarFile;
+    for(int c=0; c<file.get_numberOfColumns(); c++){
+      for(int r=0; r<file.get_numberOfRows(); r++) sum += file.get( c , r );
+    }
+    return sum;
+  }
+  
+}
\ No newline at end of file
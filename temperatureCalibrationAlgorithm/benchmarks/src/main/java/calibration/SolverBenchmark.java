@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package calibration;
+
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+// benchmarks of a full calibration (CalibrationSolver.compute_calibration) for each polynomial order.
+// The tensors are built once, and each invocation solves the calibration from its initialization (see CalibrationSolver.initialize_zk)
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MICROSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+public class SolverBenchmark {
+  
+  // PARAMETERS
+  private static final int MAX_N = 5;
+  @Param({ "0" , "1" , "2" , "3" , "4" , "5" })
+  public int N;  // polynomial order of the calibration
+  @Param({ "100000" })
+  public int measurements;
+  
+  // VARIABLES
+  private CalibrationTensors tensors;
+  private CalibrationSolver solver;
+  
+  
+  @Setup( Level.Trial )
+  public void setup() {
+    SyntheticData data = new SyntheticData( this.measurements , 1 );
+    this.tensors = new CalibrationTensors( MAX_N );
+    data.include_in( this.tensors );
+    this.solver = new CalibrationSolver( MAX_N , this.tensors );
+  }
+  
+  @Benchmark
+  public double[] compute_calibration() {
+    this.solver.compute_calibration( this.N , null );
+    return this.solver.get_z();
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package calibration;
+
+
+import java.io.*;
+import java.util.Random;
+
+
+// synthetic measurements of a triaxial sensor with a temperature-dependent distortion, used by the benchmarks.
+// The measured module is 1, and each raw measurement is x = K(T)^-1*( u - c(T) ), with u a random unit vector, and K(T), c(T) quadratic in T
+class SyntheticData {
+  
+  // PARAMETERS
+  private static final double NOISE = 1.0e-3;  // standard deviation of the noise added to the raw measurements
+  private static final double RAW_SCALE = 4096.0;  // the raw measurements are stored in the text files as integers (like the counts of an ADC)
+  
+  // VARIABLES
+  // measurements (the temperature is normalized to [-1,1])
+  double[] x;
+  double[] y;
+  double[] z;
+  double[] T;
+  double[] module;
+  
+  
+  // PUBLIC CONSTRUCTORS
+  
+  // generates theSize measurements using theSeed for the random numbers (the same seed gives the same measurements)
+  public SyntheticData( int theSize , long theSeed ) {
+    this.x = new double[theSize];
+    this.y = new double[theSize];
+    this.z = new double[theSize];
+    this.T = new double[theSize];
+    this.module = new double[theSize];
+    Random random = new Random( theSeed );
+    double[] u = new double[3];
+    for(int m=0; m<theSize; m++){
+      double t = 2.0*random.nextDouble() - 1.0;
+      // random direction
+      double un;
+      do{
+        for(int i=0; i<3; i++) u[i] = random.nextGaussian();
+        un = Math.sqrt( u[0]*u[0] + u[1]*u[1] + u[2]*u[2] );
+      }while( un < 1.0e-9 );
+      for(int i=0; i<3; i++) u[i] /= un;
+      // K(T) (lower triangular) and c(T)
+      double K11 = 1.02 + 0.010*t - 0.002*t*t;
+      double K21 = 0.01 - 0.003*t;
+      double K22 = 0.98 - 0.008*t + 0.001*t*t;
+      double K31 = -0.02 + 0.002*t*t;
+      double K32 = 0.015 + 0.004*t;
+      double K33 = 1.01 + 0.005*t - 0.003*t*t;
+      double c1 = 0.05 + 0.02*t - 0.005*t*t;
+      double c2 = -0.03 + 0.01*t;
+      double c3 = 0.02 - 0.015*t + 0.004*t*t;
+      // we solve K*x = u - c by forward substitution
+      double v1 = u[0] - c1;
+      double v2 = u[1] - c2;
+      double v3 = u[2] - c3;
+      double x1 = v1/K11;
+      double x2 = ( v2 - K21*x1 )/K22;
+      double x3 = ( v3 - K31*x1 - K32*x2 )/K33;
+      this.x[m] = x1 + NOISE*random.nextGaussian();
+      this.y[m] = x2 + NOISE*random.nextGaussian();
+      this.z[m] = x3 + NOISE*random.nextGaussian();
+      this.T[m] = t;
+      this.module[m] = 1.0;
+    }
+  }
+  
+  
+  // PUBLIC METHODS
+  
+  public int size() {
+    return this.x.length;
+  }
+  
+  // includes all the measurements in theTensors (with weight 1)
+  public void include_in( CalibrationTensors theTensors ) {
+    for(int m=0; m<this.x.length; m++) theTensors.include_measurement( 1.0 , this.x[m] , this.y[m] , this.z[m] , this.T[m] , this.module[m] );
+  }
+  
+  // writes the measurements in a text file with the layout of the data files taken by the calibration system
+  // (ID, sensor ID, accelerometer, gyroscope, temperature, ...), with the raw values stored as integers
+  public void write_textFile( File theFile ) throws IOException {
+    PrintWriter out = new PrintWriter( new BufferedWriter( new FileWriter( theFile ) , 1 << 16 ) );
+    try{
+      for(int m=0; m<this.x.length; m++){
+        long ax = Math.round( RAW_SCALE*this.x[m] );
+        long ay = Math.round( RAW_SCALE*this.y[m] );
+        long az = Math.round( RAW_SCALE*this.z[m] );
+        long rawT = Math.round( 5000.0*this.T[m] );
+        out.println( "1 11 " + ax + " " + ay + " " + az + " " + ( m%7 - 3 ) + " " + ( m%5 - 2 ) + " " + ( m%3 - 1 ) + " " + rawT + " 0 0 " + rawT + " 0.0 0.0" );
+      }
+    }finally{
+      out.close();
+    }
+  }
+  
+  // writes the measurements in a binary columnar data file (see ColumnarDataFile)
+  public void write_binaryFile( File theFile ) throws IOException {
+    double[][] columns = { this.x , this.y , this.z , this.T , this.module };
+    ColumnarDataFile.write( theFile.getPath() , columns , this.x.length );
+  }
+  
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2019 Pablo Bernal-Polo
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package calibration;
+
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+
+// benchmarks of the construction of the calibration tensors (CalibrationTensors.include_measurement)
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 5 , time = 1 )
+@Measurement( iterations = 5 , time = 1 )
+@Fork( 1 )
+public class TensorsBenchmark {
+  
+  // PARAMETERS
+  @Param({ "5" })
+  public int maxN;  // maximum polynomial order of the tensors (MAX_POLYNOMIAL_ORDER in TriaxialCalibrator)
+  @Param({ "100000" })
+  public int measurements;
+  
+  // VARIABLES
+  private SyntheticData data;
+  private CalibrationTensors tensors;
+  private int m;
+  
+  
+  @Setup( Level.Trial )
+  public void setup() {
+    this.data = new SyntheticData( this.measurements , 1 );
+    this.tensors = new CalibrationTensors( this.maxN );
+    this.m = 0;
+  }
+  
+  // time to include one measurement
+  @Benchmark
+  public CalibrationTensors include_measurement() {
+    int i = this.m;
+    this.tensors.include_measurement( 1.0 , this.data.x[i] , this.data.y[i] , this.data.z[i] , this.data.T[i] , this.data.module[i] );
+    this.m = ( i + 1 == this.data.size() ) ? 0 : i + 1;
+    return this.tensors;
+  }
+  
+  // time to build the tensors with all the measurements
+  @Benchmark
+  @OutputTimeUnit( TimeUnit.MILLISECONDS )
+  public CalibrationTensors build_tensors() {
+    this.tensors.reset();
+    this.data.include_in( this.tensors );
+    return this.tensors;
+  }
+  
+}
\ No newline at end of file
@@ -33,104 +33,103 @@ void setup() {
 
 
 // METHODS TO CALIBRATE EACH COMBINATION OF SENSORS
+// (the same calibrations can be run without a display, from a job file, with CalibrationRunner)
 
 private void calibrate_06( String fileName ) {
-  calibrate_accelerometer10( fileName );
-  calibrate_gyroscope10( fileName );
-  calibrate_accelerometer16( fileName );
-  calibrate_gyroscope16( fileName );
-//  calibrate_magnetometer16( fileName );  magnetometer data is faulty in data sets taken with the prototype
-  calibrate_accelerometer17( fileName );
-  calibrate_gyroscope17( fileName );
-//  calibrate_magnetometer17( fileName );  magnetometer data is faulty in data sets taken with the prototype
+  String path2file = sketchPath()+"/storedData/";
+  // all the sensors are calibrated reading the data file only once
+  CalibrationDriver CD = new CalibrationDriver();
+  CD.add_calibrator( get_accelerometer10() );
+  CD.add_calibrator( get_gyroscope10() );
+  CD.add_calibrator( get_accelerometer16() );
+  CD.add_calibrator( get_gyroscope16() );
+//  CD.add_calibrator( get_magnetometer16() );  magnetometer data is faulty in data sets taken with the prototype
+  CD.add_calibrator( get_accelerometer17() );
+  CD.add_calibrator( get_gyroscope17() );
+//  CD.add_calibrator( get_magnetometer17() );  magnetometer data is faulty in data sets taken with the prototype
+  CD.calibrate_withFile( path2file , fileName );
 }
 
 
-// METHODS TO CALIBRATE EACH SINGLE SENSOR
+// METHODS TO CONFIGURE THE CALIBRATOR OF EACH SINGLE SENSOR
+// (a single sensor can be calibrated with: get_accelerometer10().calibrate_withFile( sketchPath()+"/storedData/" , fileName ); )
+// (the calibrated data can be converted to text with: ColumnarDataFile.convert_toText( path2file + "11a_data.bdat" , path2file + "11a_data.dat" ); )
 
-void calibrate_accelerometer10( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_accelerometer10() {
   TriaxialCalibrator AC = new AccelerometerCalibrator();
   AC.set_sensorID( 11 );
   AC.set_indexID( 1 );
   AC.set_indexTemperature( 8 );
   AC.set_indexAngularVelocity( 12 );
   AC.set_indexMeasurements( 2 , 3 , 4 );
-  AC.calibrate_withFile( path2file , fileName );
+  return AC;
 }
 
-void calibrate_gyroscope10( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_gyroscope10() {
   TriaxialCalibrator GC = new GyroscopeCalibrator();
   GC.set_sensorID( 11 );
   GC.set_indexID( 1 );
   GC.set_indexTemperature( 8 );
   GC.set_indexAngularVelocity( 12 );
   GC.set_indexMeasurements( 5 , 6 , 7 );
-  GC.calibrate_withFile( path2file , fileName );
+  return GC;
 }
 
-void calibrate_accelerometer16( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_accelerometer16() {
   TriaxialCalibrator AC = new AccelerometerCalibrator();
   AC.set_sensorID( 16 );
   AC.set_indexID( 1 );
   AC.set_indexTemperature( 8 );
   AC.set_indexAngularVelocity( 13 );
   AC.set_indexMeasurements( 2 , 3 , 4 );
-  AC.calibrate_withFile( path2file , fileName );
+  return AC;
 }
 
-void calibrate_gyroscope16( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_gyroscope16() {
   TriaxialCalibrator GC = new GyroscopeCalibrator();
   GC.set_sensorID( 16 );
   GC.set_indexID( 1 );
   GC.set_indexTemperature( 12 );
   GC.set_indexAngularVelocity( 13 );
   GC.set_indexMeasurements( 9 , 10 , 11 );
-  GC.calibrate_withFile( path2file , fileName );
+  return GC;
 }
 
-void calibrate_magnetometer16( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_magnetometer16() {
   TriaxialCalibrator MC = new MagnetometerCalibrator();
   MC.set_sensorID( 16 );
   MC.set_indexID( 1 );
   MC.set_indexTemperature( 8 );
   MC.set_indexAngularVelocity( 13 );
   MC.set_indexMeasurements( 5 , 6 , 7 );
-  MC.calibrate_withFile( path2file , fileName );
+  return MC;
 }
 
-void calibrate_accelerometer17( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_accelerometer17() {
   TriaxialCalibrator AC = new AccelerometerCalibrator();
   AC.set_sensorID( 17 );
   AC.set_indexID( 1 );
   AC.set_indexTemperature( 11 );
   AC.set_indexAngularVelocity( 12 );
   AC.set_indexMeasurements( 2 , 3 , 4 );
-  AC.calibrate_withFile( path2file , fileName );
+  return AC;
 }
 
-void calibrate_gyroscope17( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_gyroscope17() {
   TriaxialCalibrator GC = new GyroscopeCalibrator();
   GC.set_sensorID( 17 );
   GC.set_indexID( 1 );
   GC.set_indexTemperature( 11 );
   GC.set_indexAngularVelocity( 12 );
   GC.set_indexMeasurements( 5 , 6 , 7 );
-  GC.calibrate_withFile( path2file , fileName );
+  return GC;
 }
 
-void calibrate_magnetometer17( String fileName ) {
-  String path2file = sketchPath()+"/storedData/";
+TriaxialCalibrator get_magnetometer17() {
   TriaxialCalibrator MC = new MagnetometerCalibrator();
   MC.set_sensorID( 17 );
   MC.set_indexID( 1 );
   MC.set_indexTemperature( 11 );
   MC.set_indexMeasurements( 8 , 9 , 10 );
-  MC.calibrate_withFile( path2file , fileName );
+  return MC;
 }
\ No newline at end of file